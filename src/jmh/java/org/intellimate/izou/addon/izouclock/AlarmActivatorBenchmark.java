@@ -0,0 +1,61 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.ActiveAlarms;
+import org.intellimate.izou.addon.izouclock.subclasses.AlarmActivator;
+import org.intellimate.izou.sdk.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building an {@link AlarmActivator} from the properties file (which is what happens at startup) and checking
+ * which alarms are active, for different numbers of alarms, with the alarms in the settings map or in the
+ * {@link org.intellimate.izou.addon.izouclock.subclasses.AlarmTable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlarmActivatorBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int alarms;
+
+    @Param({"false", "true"})
+    private boolean table;
+
+    private Context context;
+    private AlarmActivator alarmActivator;
+    private ActiveAlarms activeAlarms;
+
+    @Setup
+    public void setUp() throws IOException {
+        Properties properties = BenchmarkContext.alarmProperties(alarms, 0);
+        properties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY,
+                table ? "0" : String.valueOf(Integer.MAX_VALUE));
+        BenchmarkContext benchmarkContext = new BenchmarkContext(properties);
+        benchmarkContext.setPropertiesFile(BenchmarkContext.propertiesFile(properties));
+        context = benchmarkContext.getContext();
+        alarmActivator = new AlarmActivator(context);
+        activeAlarms = new ActiveAlarms();
+        alarmActivator.checkActivity(2, 7, 0, 0, activeAlarms);
+    }
+
+    @Benchmark
+    public AlarmActivator construct() {
+        return new AlarmActivator(context);
+    }
+
+    @Benchmark
+    public String[] checkActivity() {
+        return alarmActivator.checkActivity(2, 7, 0, 0);
+    }
+
+    @Benchmark
+    public int checkActivityAll() {
+        return alarmActivator.checkActivity(2, 7, 0, 0, activeAlarms);
+    }
+}
@@ -0,0 +1,33 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.AlarmRepeatSettings;
+import org.intellimate.izou.sdk.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to parse the settings string of a single alarm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlarmRepeatSettingsBenchmark {
+    private Context context;
+    private String settings;
+
+    @Setup
+    public void setUp() {
+        context = new BenchmarkContext(new Properties()).getContext();
+        settings = BenchmarkContext.alarmSettings(42, 0);
+    }
+
+    @Benchmark
+    public AlarmRepeatSettings getSettings() {
+        return new AlarmRepeatSettings(context, settings);
+    }
+}
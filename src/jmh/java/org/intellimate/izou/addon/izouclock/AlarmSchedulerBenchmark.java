@@ -0,0 +1,65 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scheduling and cancelling alarms spread over the whole week with both {@link AlarmScheduler}s, for
+ * different numbers of alarms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlarmSchedulerBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int alarms;
+
+    @Param({"executor", "timingWheel"})
+    private String scheduler;
+
+    private LoggedScheduledExecutor executorService;
+    private AlarmScheduler alarmScheduler;
+    private String[] alarmNames;
+    private Runnable alarm;
+
+    @Setup
+    public void setUp() {
+        BenchmarkContext benchmarkContext = new BenchmarkContext(new Properties());
+        executorService = new LoggedScheduledExecutor(benchmarkContext.getContext(), 1);
+        if (scheduler.equals("timingWheel")) {
+            alarmScheduler = new TimingWheelAlarmScheduler(benchmarkContext.getContext(), executorService);
+        } else {
+            alarmScheduler = new ExecutorAlarmScheduler(executorService);
+        }
+
+        alarmNames = new String[alarms];
+        for (int i = 0; i < alarms; i++) {
+            alarmNames[i] = "alarmSettings" + i;
+        }
+        alarm = () -> { };
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (alarmScheduler instanceof TimingWheelAlarmScheduler) {
+            ((TimingWheelAlarmScheduler) alarmScheduler).shutdown();
+        }
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public void scheduleAndCancelAll() {
+        for (int i = 0; i < alarms; i++) {
+            long delay = 60 + (long) i * 7919 % TimeSource.SECONDS_IN_WEEK;
+            alarmScheduler.schedule(alarmNames[i], alarm, delay, TimeSource.SECONDS_IN_WEEK, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < alarms; i++) {
+            alarmScheduler.cancel(alarmNames[i]);
+        }
+    }
+}
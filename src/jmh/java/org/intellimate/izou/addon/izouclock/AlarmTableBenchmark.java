@@ -0,0 +1,57 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.AlarmRepeatSettings;
+import org.intellimate.izou.addon.izouclock.subclasses.AlarmTable;
+import org.intellimate.izou.sdk.Context;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up alarms in an {@link AlarmTable}, and prints the footprint per alarm of the table next to the
+ * footprint of the settings map it replaces (both measured with JOL, the off-heap columns are added to the table).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AlarmTableBenchmark {
+    @Param({"1000", "1000000"})
+    private int alarms;
+
+    @Param({"false", "true"})
+    private boolean offHeap;
+
+    private AlarmTable alarmTable;
+    private int found;
+
+    @Setup
+    public void setUp() {
+        Context context = new BenchmarkContext(new Properties()).getContext();
+        HashMap<String, AlarmRepeatSettings> settingsMap = new HashMap<>(alarms * 2);
+        for (int i = 0; i < alarms; i++) {
+            settingsMap.put("alarmSettings" + i, new AlarmRepeatSettings(context, BenchmarkContext.alarmSettings(i, 0)));
+        }
+        alarmTable = AlarmTable.of(settingsMap, offHeap);
+
+        GraphLayout contextLayout = GraphLayout.parseInstance(context);
+        long mapBytes = GraphLayout.parseInstance(settingsMap).subtract(contextLayout).totalSize();
+        long tableBytes = GraphLayout.parseInstance(alarmTable).totalSize()
+                + (alarmTable.isOffHeap() ? alarmTable.getColumnBytes() : 0);
+        System.out.println();
+        System.out.println("Footprint of " + alarms + " alarms: settings map " + mapBytes / alarms
+                + " bytes per alarm, alarm table" + (offHeap ? " (off-heap)" : "") + " " + tableBytes / alarms
+                + " bytes per alarm, " + alarmTable.getEventSetCount() + " event sets");
+    }
+
+    @Benchmark
+    public int lookup() {
+        found = 0;
+        return alarmTable.lookup(2, 7, 0, 0, row -> found++);
+    }
+}
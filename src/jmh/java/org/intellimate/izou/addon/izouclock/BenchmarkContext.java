@@ -0,0 +1,150 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+import org.intellimate.izou.sdk.properties.PropertiesAssistant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * A stubbed {@link Context} for the benchmarks. Its {@link PropertiesAssistant} serves a {@link Properties} object
+ * that the benchmark can replace at any time, every event ID resolves to itself and all logging is swallowed.
+ */
+class BenchmarkContext {
+    private static final String[] DAYS = {"sunday", "monday", "tuesday", "wednesday", "thursday", "friday",
+            "saturday"};
+
+    private final Context context;
+    private volatile Properties properties;
+    private File propertiesFile;
+
+    /**
+     * Creates a new BenchmarkContext
+     *
+     * @param properties the properties the context serves initially
+     */
+    BenchmarkContext(Properties properties) {
+        this.properties = properties;
+
+        context = mock(Context.class, withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+        PropertiesAssistant propertiesAssistant = mock(PropertiesAssistant.class,
+                withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+
+        try {
+            // the logger type belongs to the SDK, so it is looked up instead of named here
+            Class<?> loggerType = Context.class.getMethod("getLogger").getReturnType();
+            doReturn(mock(loggerType, withSettings().stubOnly())).when(context).getLogger();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Context has no logger", e);
+        }
+
+        doReturn(propertiesAssistant).when(context).getPropertiesAssistant();
+        doAnswer(invocation -> this.properties).when(propertiesAssistant).getProperties();
+        doAnswer(invocation -> this.properties.getProperty(invocation.getArgument(0)))
+                .when(propertiesAssistant).getProperty(anyString());
+        // the deep stub has to be resolved before the stubbing starts, so when() is used instead of doAnswer()
+        when(propertiesAssistant.getEventPropertiesAssistant().getEventID(anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        doAnswer(invocation -> propertiesFile).when(propertiesAssistant).getPropertiesFile();
+    }
+
+    /**
+     * Gets the stubbed context
+     *
+     * @return the stubbed context
+     */
+    Context getContext() {
+        return context;
+    }
+
+    /**
+     * Replaces the properties the context serves
+     *
+     * @param properties the new properties
+     */
+    void setProperties(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Sets the file that is returned as the properties file
+     *
+     * @param propertiesFile the properties file
+     */
+    void setPropertiesFile(File propertiesFile) {
+        this.propertiesFile = propertiesFile;
+    }
+
+    /**
+     * Creates properties with the given number of alarms, spread over the whole week
+     *
+     * @param alarms the number of alarms
+     * @param secondOffset added to the second of every alarm, so that two sets of alarms can be told apart
+     * @return the properties
+     */
+    static Properties alarmProperties(int alarms, int secondOffset) {
+        Properties properties = new Properties();
+        properties.setProperty("alarmActivityState", "true");
+        for (int i = 0; i < alarms; i++) {
+            properties.setProperty("alarmSettings" + i, alarmSettings(i, secondOffset));
+        }
+        return properties;
+    }
+
+    /**
+     * Creates the settings string of an alarm
+     *
+     * @param i the number of the alarm, it decides when the alarm goes off
+     * @param secondOffset added to the second of the alarm
+     * @return the settings string
+     */
+    static String alarmSettings(int i, int secondOffset) {
+        return DAYS[i % 7] + ";" + (i % 2 == 0) + ";" + (i / 7 % 24) + ";" + (i / 168 % 60) + ";"
+                + ((i / 10080 + secondOffset) % 60) + ";izou.alarm;event" + (i % 5);
+    }
+
+    /**
+     * Writes the given properties into a temporary properties file
+     *
+     * @param properties the properties to write
+     * @return the properties file
+     * @throws IOException if the file could not be written
+     */
+    static File propertiesFile(Properties properties) throws IOException {
+        File file = File.createTempFile("izouclock", ".properties");
+        file.deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        return file;
+    }
+
+    /**
+     * Writes a properties file with the given number of filler lines in front of the ClockController alarm section
+     *
+     * @param lines the number of filler lines
+     * @return the properties file
+     * @throws IOException if the file could not be written
+     */
+    static File propertiesFile(int lines) throws IOException {
+        List<String> content = new ArrayList<>(lines + 1);
+        for (int i = 0; i < lines; i++) {
+            content.add("fillerProperty" + i + " = " + alarmSettings(i, 0));
+        }
+        content.add("# ClockController Alarms (do not change or remove this line)");
+
+        File file = File.createTempFile("izouclock", ".properties");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content, StandardCharsets.UTF_8);
+        return file;
+    }
+}
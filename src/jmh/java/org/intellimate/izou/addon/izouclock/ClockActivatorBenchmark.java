@@ -0,0 +1,69 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.AlarmActivator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a reload of the {@link ClockActivator} when nothing changed and when every alarm changed (so every alarm
+ * has to be rescheduled), for different numbers of alarms and both alarm schedulers, or with all alarms in the
+ * {@link org.intellimate.izou.addon.izouclock.subclasses.AlarmTable} (then the scheduler is not used for them).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClockActivatorBenchmark {
+    @Param({"10", "1000", "100000"})
+    private int alarms;
+
+    @Param({"executor", "timingWheel"})
+    private String scheduler;
+
+    @Param({"false", "true"})
+    private boolean table;
+
+    private BenchmarkContext benchmarkContext;
+    private Properties properties;
+    private Properties changedProperties;
+    private ClockActivator clockActivator;
+
+    @Setup
+    public void setUp() {
+        properties = BenchmarkContext.alarmProperties(alarms, 0);
+        properties.setProperty(ClockActivator.SCHEDULER_PROPERTY, scheduler);
+        changedProperties = BenchmarkContext.alarmProperties(alarms, 1);
+        changedProperties.setProperty(ClockActivator.SCHEDULER_PROPERTY, scheduler);
+        String tableThreshold = table ? "0" : String.valueOf(Integer.MAX_VALUE);
+        properties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY, tableThreshold);
+        changedProperties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY, tableThreshold);
+
+        benchmarkContext = new BenchmarkContext(properties);
+        clockActivator = new ClockActivator(benchmarkContext.getContext());
+        clockActivator.reloadNow();
+    }
+
+    @TearDown
+    public void tearDown() {
+        clockActivator.shutdown();
+    }
+
+    @Benchmark
+    public void updateUnchanged() {
+        clockActivator.reloadNow();
+    }
+
+    @Benchmark
+    public void updateAllChanged() {
+        Properties current = properties;
+        properties = changedProperties;
+        changedProperties = current;
+
+        benchmarkContext.setProperties(properties);
+        clockActivator.reloadNow();
+    }
+}
@@ -0,0 +1,67 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures scheduling and removing an alarm through the {@link ClockController}, for both alarm stores and files of
+ * increasing size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClockControllerBenchmark {
+    @Param({"100", "10000", "100000"})
+    private int lines;
+
+    @Param({"properties", "log"})
+    private String store;
+
+    private ClockActivator clockActivator;
+    private ClockController clockController;
+    private List<String> events;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkContext benchmarkContext = new BenchmarkContext(new Properties());
+        benchmarkContext.setPropertiesFile(BenchmarkContext.propertiesFile(lines));
+
+        AlarmStore alarmStore;
+        if (store.equals("log")) {
+            Path logFile = Files.createTempDirectory("izouclock").resolve("alarms.log");
+            logFile.toFile().deleteOnExit();
+            alarmStore = new LogAlarmStore(benchmarkContext.getContext(), logFile);
+            for (int i = 0; i < lines; i++) {
+                alarmStore.put("fillerAlarm" + i, BenchmarkContext.alarmSettings(i, 0));
+            }
+        } else {
+            alarmStore = new PropertiesAlarmStore(benchmarkContext.getContext());
+        }
+
+        clockActivator = new ClockActivator(benchmarkContext.getContext());
+        clockController = new ClockController(benchmarkContext.getContext(), clockActivator, alarmStore);
+        events = Arrays.asList("izou.alarm", "event1");
+    }
+
+    @TearDown
+    public void tearDown() {
+        clockController.shutdown();
+        clockActivator.shutdown();
+    }
+
+    @Benchmark
+    public boolean scheduleAndUnscheduleAlarm() {
+        int alarmNumber = clockController.scheduleAlarm("monday", true, 7, 30, 0, events);
+        return clockController.unscheduleAlarm(alarmNumber);
+    }
+}
@@ -0,0 +1,66 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how precisely alarms go off: every invocation schedules an alarm 5 ms ahead and waits for it. With
+ * "deadline", the alarm is a {@link DeadlineTask} that is scheduled 2 ms early and waits for its deadline itself, with
+ * "executor" it is scheduled on the executor directly. The jitter (the distance between the time the alarm should go
+ * off at and the time it went off) is printed at the end of every trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DeadlineTaskBenchmark {
+    private static final long DELAY = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long LEAD = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @Param({"deadline", "executor"})
+    private String scheduling;
+
+    private BenchmarkContext benchmarkContext;
+    private LoggedScheduledExecutor executor;
+    private LatencyHistogram jitter;
+    private AtomicLong missedDeadlines;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        benchmarkContext = new BenchmarkContext(new Properties());
+        executor = new LoggedScheduledExecutor(benchmarkContext.getContext(), 2);
+        jitter = new LatencyHistogram();
+        missedDeadlines = new AtomicLong();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        System.out.println();
+        System.out.println("Jitter with " + scheduling + " scheduling: " + jitter.snapshot() + ", "
+                + missedDeadlines.get() + " missed deadlines");
+    }
+
+    @Benchmark
+    public void fire() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long deadline = System.nanoTime() + DELAY;
+        if (scheduling.equals("deadline")) {
+            DeadlineTask deadlineTask = new DeadlineTask(benchmarkContext.getContext(), "benchmark", fired::countDown,
+                    deadline, 0, 0, TimeUnit.SECONDS.toNanos(1), jitter, missedDeadlines);
+            executor.schedule(deadlineTask, DELAY - LEAD, TimeUnit.NANOSECONDS);
+        } else {
+            executor.schedule(() -> {
+                jitter.record(Math.abs(System.nanoTime() - deadline));
+                fired.countDown();
+            }, DELAY, TimeUnit.NANOSECONDS);
+        }
+        fired.await();
+    }
+}
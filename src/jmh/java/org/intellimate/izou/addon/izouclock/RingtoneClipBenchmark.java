@@ -0,0 +1,139 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.RingtoneClipCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the first-sound latency of a ringtone on the side of the audio player: the time it takes to open the file
+ * and get to the first frame that is played. With "ringtone", the player opens the whole MP3 and skips frame by frame
+ * to the start point, the way it did before the clips were cut. With "clip", it opens the clip the
+ * {@link RingtoneClipCache} cut ahead of time, which starts with the first frame that is played.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RingtoneClipBenchmark {
+    private static final Path RINGTONES = Paths.get("src", "main", "resources", "ringtones");
+    private static final int DURATION = 5000;
+    private static final int[][] BITRATES = {
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},   // MPEG 1
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}        // MPEG 2 and 2.5
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    @Param({"Welcome.mp3", "Elegant.mp3"})
+    private String ringtone;
+
+    @Param({"0", "20000"})
+    private int startPoint;
+
+    @Param({"ringtone", "clip"})
+    private String source;
+
+    private Path dataDirectory;
+    private Path file;
+    private long skip;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDirectory = Files.createTempDirectory("izouclock");
+        if (source.equals("clip")) {
+            RingtoneClipCache clipCache = new RingtoneClipCache(new BenchmarkContext(new Properties()).getContext(),
+                    dataDirectory);
+            file = clipCache.getClip(RINGTONES.resolve(ringtone), startPoint, DURATION)
+                    .orElseThrow(() -> new IllegalStateException("Unable to cut a clip out of " + ringtone))
+                    .getPath();
+            skip = 0;
+        } else {
+            file = RINGTONES.resolve(ringtone);
+            skip = startPoint * 1000L;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dataDirectory.resolve("clips").toFile().listFiles();
+        if (files != null) {
+            for (File clip : files) {
+                clip.delete();
+            }
+        }
+        dataDirectory.resolve("clips").toFile().delete();
+        dataDirectory.toFile().delete();
+    }
+
+    @Benchmark
+    public int firstFrame() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            skipId3Tag(in);
+
+            // time is counted in microseconds, like the clip cache does
+            long time = 0;
+            while (true) {
+                int header = in.readInt();
+                int frameLength = frameLength(header);
+                if (frameLength <= 0) {
+                    throw new IllegalStateException("No MPEG layer III frame in " + file);
+                }
+                if (time >= skip) {
+                    byte[] frame = new byte[frameLength - 4];
+                    in.readFully(frame);
+                    return header ^ frame[frame.length - 1];
+                }
+                in.skipBytes(frameLength - 4);
+                time += (((header >> 19) & 0x3) == 3 ? 1152 : 576) * 1000000L / sampleRate(header);
+            }
+        }
+    }
+
+    private static void skipId3Tag(DataInputStream in) throws IOException {
+        in.mark(10);
+        byte[] tag = new byte[10];
+        in.readFully(tag);
+        if (tag[0] != 'I' || tag[1] != 'D' || tag[2] != '3') {
+            in.reset();
+            return;
+        }
+        int size = (tag[6] & 0x7F) << 21 | (tag[7] & 0x7F) << 14 | (tag[8] & 0x7F) << 7 | (tag[9] & 0x7F);
+        in.skipBytes(size + ((tag[5] & 0x10) != 0 ? 10 : 0));
+    }
+
+    private static int frameLength(int header) {
+        int version = (header >> 19) & 0x3;
+        int layer = (header >> 17) & 0x3;
+        int bitrateIndex = (header >> 12) & 0xF;
+        int sampleRateIndex = (header >> 10) & 0x3;
+        if ((header >>> 21) != 0x7FF || version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15
+                || sampleRateIndex == 3) {
+            return -1;
+        }
+        boolean mpeg1 = version == 3;
+        int bitrate = BITRATES[mpeg1 ? 0 : 1][bitrateIndex] * 1000;
+        return (mpeg1 ? 144 : 72) * bitrate / sampleRate(header) + ((header >> 9) & 0x1);
+    }
+
+    private static int sampleRate(int header) {
+        int sampleRate = SAMPLE_RATES[(header >> 10) & 0x3];
+        switch ((header >> 19) & 0x3) {
+            case 3:
+                return sampleRate;
+            case 2:
+                return sampleRate / 2;
+            default:
+                return sampleRate / 4;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.CatchUpPolicy;
+
+import java.util.List;
+
+/**
+ * <p>
+ *     An AlarmDefinition describes an alarm that should be scheduled through
+ *     {@link ClockController#scheduleAlarms(List)}. It takes the same values as
+ *     {@link ClockController#scheduleAlarm(String, boolean, int, int, int, List)}.
+ * </p>
+ */
+public class AlarmDefinition {
+    private final String day;
+    private final boolean repeat;
+    private final int hour;
+    private final int minute;
+    private final int second;
+    private final int millisecond;
+    private final List<String> events;
+    private final CatchUpPolicy catchUpPolicy;
+
+    /**
+     * <p>
+     *     Create a new AlarmDefinition.
+     * </p>
+     *
+     * @param day The day the alarm should go off. The day has to be a valid day of the week (monday - sunday) or a
+     *            recurrence rule, for example "weekdays" (see
+     *            {@link org.intellimate.izou.addon.izouclock.subclasses.RecurrenceRule}).
+     * @param repeat True if the alarm should repeat, else false. If set to false, the alarm only executes once.
+     * @param hour The hour of the day that the alarm should go off. An integer between 0 and 24.
+     * @param minute The minute of the hour the alarm should go off. An integer between 0 and 60.
+     * @param second The second of the minute the alarm should go off. An integer between 0 and 60.
+     * @param events The set of events the alarm should fire when it executes.
+     */
+    public AlarmDefinition(String day, boolean repeat, int hour, int minute, int second, List<String> events) {
+        this(day, repeat, hour, minute, second, -1, events);
+    }
+
+    /**
+     * <p>
+     *     Create a new AlarmDefinition for an alarm that goes off at a millisecond. Such alarms are scheduled precisely,
+     *     with a deadline instead of to the second.
+     * </p>
+     *
+     * @param day The day the alarm should go off, like in
+     *            {@link #AlarmDefinition(String, boolean, int, int, int, List)}.
+     * @param repeat True if the alarm should repeat, else false. If set to false, the alarm only executes once.
+     * @param hour The hour of the day that the alarm should go off. An integer between 0 and 24.
+     * @param minute The minute of the hour the alarm should go off. An integer between 0 and 60.
+     * @param second The second of the minute the alarm should go off. An integer between 0 and 60.
+     * @param millisecond The millisecond of the second the alarm should go off. An integer between 0 and 999, or -1
+     *                    if the alarm should go off to the second.
+     * @param events The set of events the alarm should fire when it executes.
+     */
+    public AlarmDefinition(String day, boolean repeat, int hour, int minute, int second, int millisecond,
+                           List<String> events) {
+        this(day, repeat, hour, minute, second, millisecond, events, null);
+    }
+
+    /**
+     * <p>
+     *     Create a new AlarmDefinition with a {@link CatchUpPolicy}, which decides whether the alarm still goes off if it
+     *     missed its time, because Izou was not running or the computer was asleep.
+     * </p>
+     *
+     * @param day The day the alarm should go off, like in
+     *            {@link #AlarmDefinition(String, boolean, int, int, int, List)}.
+     * @param repeat True if the alarm should repeat, else false. If set to false, the alarm only executes once.
+     * @param hour The hour of the day that the alarm should go off. An integer between 0 and 24.
+     * @param minute The minute of the hour the alarm should go off. An integer between 0 and 60.
+     * @param second The second of the minute the alarm should go off. An integer between 0 and 60.
+     * @param millisecond The millisecond of the second the alarm should go off. An integer between 0 and 999, or -1
+     *                    if the alarm should go off to the second.
+     * @param events The set of events the alarm should fire when it executes.
+     * @param catchUpPolicy The catch-up policy of the alarm, or null to use the default policy of the clock.
+     */
+    public AlarmDefinition(String day, boolean repeat, int hour, int minute, int second, int millisecond,
+                           List<String> events, CatchUpPolicy catchUpPolicy) {
+        this.day = day;
+        this.repeat = repeat;
+        this.hour = hour;
+        this.minute = minute;
+        this.second = second;
+        this.millisecond = millisecond;
+        this.events = events;
+        this.catchUpPolicy = catchUpPolicy;
+    }
+
+    /**
+     * Gets the day the alarm should go off
+     *
+     * @return the day the alarm should go off
+     */
+    public String getDay() {
+        return day;
+    }
+
+    /**
+     * Gets whether the alarm should repeat
+     *
+     * @return true if the alarm should repeat, else false
+     */
+    public boolean isRepeat() {
+        return repeat;
+    }
+
+    /**
+     * Gets the hour of the day the alarm should go off
+     *
+     * @return the hour of the day
+     */
+    public int getHour() {
+        return hour;
+    }
+
+    /**
+     * Gets the minute of the hour the alarm should go off
+     *
+     * @return the minute of the hour
+     */
+    public int getMinute() {
+        return minute;
+    }
+
+    /**
+     * Gets the second of the minute the alarm should go off
+     *
+     * @return the second of the minute
+     */
+    public int getSecond() {
+        return second;
+    }
+
+    /**
+     * Gets the millisecond of the second the alarm should go off
+     *
+     * @return the millisecond of the second, or -1 if the alarm goes off to the second
+     */
+    public int getMillisecond() {
+        return millisecond;
+    }
+
+    /**
+     * Gets the events the alarm should fire
+     *
+     * @return the events the alarm should fire
+     */
+    public List<String> getEvents() {
+        return events;
+    }
+
+    /**
+     * Gets the catch-up policy of the alarm
+     *
+     * @return the catch-up policy, or null if the alarm uses the default policy of the clock
+     */
+    public CatchUpPolicy getCatchUpPolicy() {
+        return catchUpPolicy;
+    }
+}
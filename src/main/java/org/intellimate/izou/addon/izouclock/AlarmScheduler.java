@@ -0,0 +1,51 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An AlarmScheduler is the backend the {@link ClockActivator} uses to run its alarms at the right time. Every alarm is
+ * identified by its name (the key of its alarm settings), so scheduling an alarm under a name that is already in use
+ * replaces the old alarm.
+ */
+public interface AlarmScheduler {
+    /**
+     * Schedules an alarm. If an alarm with the same name is already scheduled, it is cancelled first.
+     *
+     * @param alarmName the name of the alarm
+     * @param alarm the runnable to execute when the alarm goes off
+     * @param initialDelay the time until the alarm goes off for the first time
+     * @param period the time between two executions of the alarm, or 0 if the alarm should only go off once
+     * @param unit the time unit of initialDelay and period
+     */
+    void schedule(String alarmName, Runnable alarm, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Cancels the alarm with the given name.
+     *
+     * @param alarmName the name of the alarm to cancel
+     * @return true if the alarm was scheduled and is now cancelled, else false
+     */
+    boolean cancel(String alarmName);
+
+    /**
+     * Gets the time until the alarm with the given name goes off next.
+     *
+     * @param alarmName the name of the alarm
+     * @param unit the time unit of the result
+     * @return the time until the alarm goes off next, or -1 if no alarm with that name is scheduled
+     */
+    long getDelay(String alarmName, TimeUnit unit);
+
+    /**
+     * Cancels all scheduled alarms.
+     */
+    void cancelAll();
+
+    /**
+     * Returns the names of all currently scheduled alarms.
+     *
+     * @return the names of all currently scheduled alarms
+     */
+    Set<String> getScheduledAlarms();
+}
@@ -0,0 +1,392 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The AlarmStateFile keeps the state of the alarms across restarts: whether a one-shot alarm already went off, and
+ * the next time every alarm goes off. It is a small memory-mapped file, so reading the state at startup and updating
+ * it when an alarm goes off costs no more than a memory access.
+ * <p>
+ * The file is an open-addressing hash table of fixed-size records, keyed by a 64 bit hash of the alarm name. Every
+ * record also contains the hash of the settings of its alarm, so a state that was saved for other settings (because
+ * the alarm was changed) is ignored. A record is updated field by field with single aligned writes, and a new record
+ * only becomes visible when its key is written last, so the file is never left with a half written record.
+ * </p>
+ * <p>
+ * When the table grows or alarms are removed, the records are copied into a new table in a part of the file the
+ * current table does not use. The new table is forced to disk before the header is switched to it with a single
+ * aligned write, so a crash at any point leaves either the old or the new table. The file grows in place and is never
+ * replaced, so it works on every platform while it is mapped.
+ * </p>
+ */
+public class AlarmStateFile {
+    private static final int MAGIC = 0x495a434b;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+    private static final int MIN_CAPACITY = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    /**
+     * The table the file currently uses: its capacity in the high int and its offset in the low int, so both change
+     * with a single write. Version 1 files had the capacity here too, and their table always started after the header.
+     */
+    private static final int TABLE_OFFSET = 8;
+
+    private static final int KEY_OFFSET = 0;
+    private static final int SETTINGS_OFFSET = 8;
+    private static final int FLAGS_OFFSET = 12;
+    private static final int NEXT_FIRE_OFFSET = 16;
+
+    private static final int FLAG_FIRED = 1;
+
+    private final Context context;
+    private final Path stateFile;
+    private MappedByteBuffer buffer;
+    private int table;
+    private int capacity;
+    private int count;
+
+    /**
+     * Opens the state file, and creates it if it does not exist or can not be used
+     *
+     * @param context the context of the addOn
+     * @param stateFile the path of the state file
+     * @throws IOException if the state file could not be opened or created
+     */
+    public AlarmStateFile(Context context, Path stateFile) throws IOException {
+        this.context = context;
+        this.stateFile = stateFile;
+        if (!open()) {
+            create();
+        }
+    }
+
+    /**
+     * Checks whether a one-shot alarm already went off
+     *
+     * @param alarmName the name of the alarm
+     * @param settingsHash the hash of the settings of the alarm
+     * @return true if the alarm went off with these settings, else false
+     */
+    public synchronized boolean isFired(String alarmName, int settingsHash) {
+        int record = find(alarmName, settingsHash);
+        return record >= 0 && (buffer.getInt(record + FLAGS_OFFSET) & FLAG_FIRED) != 0;
+    }
+
+    /**
+     * Remembers that a one-shot alarm went off. The change is forced to disk right away.
+     *
+     * @param alarmName the name of the alarm
+     * @param settingsHash the hash of the settings of the alarm
+     */
+    public synchronized void markFired(String alarmName, int settingsHash) {
+        int record = findOrAdd(alarmName, settingsHash);
+        if (record < 0) {
+            return;
+        }
+        buffer.putInt(record + FLAGS_OFFSET, buffer.getInt(record + FLAGS_OFFSET) | FLAG_FIRED);
+        buffer.force();
+    }
+
+    /**
+     * Gets the next time the alarm goes off
+     *
+     * @param alarmName the name of the alarm
+     * @param settingsHash the hash of the settings of the alarm
+     * @return the next time as local epoch millisecond, or -1 if it is not known for these settings
+     */
+    public synchronized long getNextFire(String alarmName, int settingsHash) {
+        int record = find(alarmName, settingsHash);
+        return record < 0 ? -1 : buffer.getLong(record + NEXT_FIRE_OFFSET);
+    }
+
+    /**
+     * Sets the next time the alarm goes off. The change is written back to disk by the operating system.
+     *
+     * @param alarmName the name of the alarm
+     * @param settingsHash the hash of the settings of the alarm
+     * @param nextFire the next time as local epoch millisecond
+     */
+    public synchronized void setNextFire(String alarmName, int settingsHash, long nextFire) {
+        // the record has to be found first, adding it may remap the buffer
+        int record = findOrAdd(alarmName, settingsHash);
+        if (record >= 0) {
+            buffer.putLong(record + NEXT_FIRE_OFFSET, nextFire);
+        }
+    }
+
+    /**
+     * Moves the next time the alarm goes off on by the given period, for example after a weekly alarm went off
+     *
+     * @param alarmName the name of the alarm
+     * @param settingsHash the hash of the settings of the alarm
+     * @param period the period in milliseconds
+     */
+    public synchronized void advanceNextFire(String alarmName, int settingsHash, long period) {
+        int record = find(alarmName, settingsHash);
+        if (record >= 0) {
+            buffer.putLong(record + NEXT_FIRE_OFFSET, buffer.getLong(record + NEXT_FIRE_OFFSET) + period);
+        }
+    }
+
+    /**
+     * Removes the state of all alarms that are not in the given collection
+     *
+     * @param alarmNames the names of the alarms to keep
+     */
+    public synchronized void retainAll(Collection<String> alarmNames) {
+        Set<Long> keys = new HashSet<>();
+        for (String alarmName : alarmNames) {
+            keys.add(keyOf(alarmName));
+        }
+        int removed = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long key = buffer.getLong(recordOffset(slot) + KEY_OFFSET);
+            if (key != 0 && !keys.contains(key)) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            try {
+                rehash(capacity, keys);
+            } catch (IOException e) {
+                context.getLogger().error("Unable to remove the state of " + removed + " alarms", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of alarms with a state
+     *
+     * @return the number of alarms with a state
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Finds the record of the alarm
+     *
+     * @return the offset of the record, or -1 if there is no record for the alarm and settings
+     */
+    private int find(String alarmName, int settingsHash) {
+        long key = keyOf(alarmName);
+        int slot = slotOf(key);
+        for (int probe = 0; probe < capacity; probe++) {
+            int record = recordOffset(slot);
+            long recordKey = buffer.getLong(record + KEY_OFFSET);
+            if (recordKey == 0) {
+                return -1;
+            }
+            if (recordKey == key) {
+                return buffer.getInt(record + SETTINGS_OFFSET) == settingsHash ? record : -1;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the record of the alarm, and adds it if there is none. A record for other settings is reset.
+     *
+     * @return the offset of the record, or -1 if the table is full and could not grow
+     */
+    private int findOrAdd(String alarmName, int settingsHash) {
+        if ((count + 1) * 2 > capacity) {
+            try {
+                rehash(capacity * 2, null);
+            } catch (IOException e) {
+                context.getLogger().error("Unable to grow the alarm state file", e);
+            }
+        }
+
+        long key = keyOf(alarmName);
+        int slot = slotOf(key);
+        for (int probe = 0; probe < capacity; probe++) {
+            int record = recordOffset(slot);
+            long recordKey = buffer.getLong(record + KEY_OFFSET);
+            if (recordKey == key) {
+                if (buffer.getInt(record + SETTINGS_OFFSET) != settingsHash) {
+                    buffer.putInt(record + FLAGS_OFFSET, 0);
+                    buffer.putLong(record + NEXT_FIRE_OFFSET, -1);
+                    buffer.putInt(record + SETTINGS_OFFSET, settingsHash);
+                }
+                return record;
+            }
+            if (recordKey == 0) {
+                if (count + 1 >= capacity) {
+                    // at least one slot has to stay empty, it ends every search for an alarm without a record
+                    context.getLogger().error("The alarm state file is full, the state of alarm " + alarmName
+                            + " is not saved");
+                    return -1;
+                }
+                // the key is written last, so the record only exists once it is complete
+                buffer.putInt(record + SETTINGS_OFFSET, settingsHash);
+                buffer.putInt(record + FLAGS_OFFSET, 0);
+                buffer.putLong(record + NEXT_FIRE_OFFSET, -1);
+                buffer.putLong(record + KEY_OFFSET, key);
+                count++;
+                return record;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Maps the existing state file
+     *
+     * @return true if the file exists and is a valid state file, else false
+     */
+    private boolean open() throws IOException {
+        if (!Files.isRegularFile(stateFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the header is read without mapping the file, so a file that is not valid can be replaced afterwards
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+                // read until the header is complete or the file ends
+            }
+            int fileVersion = header.getInt(VERSION_OFFSET);
+            int fileCapacity = header.getInt(TABLE_OFFSET);
+            int fileTable = fileVersion == 1 ? HEADER_SIZE : header.getInt(TABLE_OFFSET + 4);
+            if (header.hasRemaining() || header.getInt(MAGIC_OFFSET) != MAGIC
+                    || (fileVersion != 1 && fileVersion != VERSION) || fileCapacity < MIN_CAPACITY
+                    || Integer.bitCount(fileCapacity) != 1 || fileTable < HEADER_SIZE
+                    || (fileTable - HEADER_SIZE) % RECORD_SIZE != 0
+                    || channel.size() < (long) fileTable + (long) fileCapacity * RECORD_SIZE) {
+                context.getLogger().warn("The alarm state file is not valid, starting with an empty state");
+                return false;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (fileVersion == 1) {
+                // the count of a version 1 file becomes the offset of its table. Either way the file has one table.
+                buffer.putInt(TABLE_OFFSET + 4, HEADER_SIZE);
+                buffer.force();
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                buffer.force();
+            }
+            table = fileTable;
+            capacity = fileCapacity;
+            count = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                if (buffer.getLong(recordOffset(slot) + KEY_OFFSET) != 0) {
+                    count++;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Creates a new, empty state file
+     */
+    private void create() throws IOException {
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + MIN_CAPACITY * RECORD_SIZE);
+        }
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(VERSION_OFFSET, VERSION);
+        buffer.putLong(TABLE_OFFSET, tableOf(MIN_CAPACITY, HEADER_SIZE));
+        buffer.force();
+        table = HEADER_SIZE;
+        capacity = MIN_CAPACITY;
+        count = 0;
+    }
+
+    /**
+     * Copies all records (or only the ones with the given keys) into a new table with the given capacity, and switches
+     * the file to it. The new table is written where it does not overlap the current one: right after the header if
+     * there is enough room before the current table, else right after the current table. The file is never replaced or
+     * shrunk, because a file that is mapped can not be replaced on every platform (and Java 8 can not unmap it).
+     */
+    private void rehash(int newCapacity, Set<Long> keep) throws IOException {
+        int newTable = HEADER_SIZE + newCapacity * RECORD_SIZE <= table ? HEADER_SIZE : table + capacity * RECORD_SIZE;
+        long newEnd = (long) newTable + (long) newCapacity * RECORD_SIZE;
+        if (newEnd > Integer.MAX_VALUE) {
+            throw new IOException("The alarm state file can not grow to " + newEnd + " bytes");
+        }
+        if (newEnd > buffer.capacity()) {
+            try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                // mapping more than the size of the file grows the file, the old mapping stays valid meanwhile
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newEnd);
+            }
+        }
+
+        // the new table may contain the records of an older table
+        for (int slot = 0; slot < newCapacity; slot++) {
+            buffer.putLong(newTable + slot * RECORD_SIZE + KEY_OFFSET, 0);
+        }
+        int kept = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            int record = recordOffset(slot);
+            long key = buffer.getLong(record + KEY_OFFSET);
+            if (key == 0 || (keep != null && !keep.contains(key))) {
+                continue;
+            }
+            int newSlot = (int) mix(key) & (newCapacity - 1);
+            while (buffer.getLong(newTable + newSlot * RECORD_SIZE + KEY_OFFSET) != 0) {
+                newSlot = (newSlot + 1) & (newCapacity - 1);
+            }
+            int newRecord = newTable + newSlot * RECORD_SIZE;
+            buffer.putInt(newRecord + SETTINGS_OFFSET, buffer.getInt(record + SETTINGS_OFFSET));
+            buffer.putInt(newRecord + FLAGS_OFFSET, buffer.getInt(record + FLAGS_OFFSET));
+            buffer.putLong(newRecord + NEXT_FIRE_OFFSET, buffer.getLong(record + NEXT_FIRE_OFFSET));
+            buffer.putLong(newRecord + KEY_OFFSET, key);
+            kept++;
+        }
+        // the new table has to be on disk before the header points to it
+        buffer.force();
+
+        buffer.putLong(TABLE_OFFSET, tableOf(newCapacity, newTable));
+        buffer.force();
+        table = newTable;
+        capacity = newCapacity;
+        count = kept;
+    }
+
+    private static long tableOf(int capacity, int offset) {
+        return (long) capacity << 32 | offset;
+    }
+
+    private int slotOf(long key) {
+        return (int) mix(key) & (capacity - 1);
+    }
+
+    private int recordOffset(int slot) {
+        return table + slot * RECORD_SIZE;
+    }
+
+    /**
+     * Gets the key of an alarm name, a 64 bit FNV-1a hash that is never 0 (which marks an empty slot)
+     */
+    private static long keyOf(String alarmName) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < alarmName.length(); i++) {
+            hash ^= alarmName.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
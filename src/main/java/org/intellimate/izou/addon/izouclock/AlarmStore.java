@@ -0,0 +1,68 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An AlarmStore persists the alarms that are scheduled through the {@link ClockController}. Alarms are stored as
+ * their name (for example alarmSettings12) and their settings string, which has the same format as in the properties
+ * file.
+ */
+public interface AlarmStore {
+    /**
+     * Stores an alarm. If an alarm with the same name already exists, it is replaced.
+     *
+     * @param alarmName the name of the alarm
+     * @param alarmSettings the settings string of the alarm
+     * @throws IOException if the alarm could not be written
+     */
+    void put(String alarmName, String alarmSettings) throws IOException;
+
+    /**
+     * Removes an alarm.
+     *
+     * @param alarmName the name of the alarm to remove
+     * @return true if the alarm existed and was removed, else false
+     * @throws IOException if the removal could not be written
+     */
+    boolean remove(String alarmName) throws IOException;
+
+    /**
+     * Stores all given alarms at once. Alarms with the same name as an existing alarm replace it.
+     *
+     * @param alarms the alarms to store, as name and settings string
+     * @throws IOException if the alarms could not be written
+     */
+    default void putAll(Map<String, String> alarms) throws IOException {
+        for (Map.Entry<String, String> alarm : alarms.entrySet()) {
+            put(alarm.getKey(), alarm.getValue());
+        }
+    }
+
+    /**
+     * Removes all given alarms at once.
+     *
+     * @param alarmNames the names of the alarms to remove
+     * @return the names of the alarms that existed and were removed
+     * @throws IOException if the removal could not be written
+     */
+    default Set<String> removeAll(Collection<String> alarmNames) throws IOException {
+        Set<String> removed = new HashSet<>();
+        for (String alarmName : alarmNames) {
+            if (remove(alarmName)) {
+                removed.add(alarmName);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns all alarms of this store that are not already part of the properties file, by name.
+     *
+     * @return all alarms of this store that are not already part of the properties file
+     */
+    Map<String, String> getAlarms();
+}
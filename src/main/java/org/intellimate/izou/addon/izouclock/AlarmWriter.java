@@ -0,0 +1,192 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The AlarmWriter is the single writer of an {@link AlarmStore}. Changes are queued and written by one thread, so
+ * callers never wait for the disk unless they want to.
+ * <p>
+ * Changes that arrive within a short window are merged and written together, with one {@link AlarmStore#removeAll}
+ * and one {@link AlarmStore#putAll}. After a batch is written, the alarms are reloaded, and only then are the futures
+ * of the batch completed. So once a future is complete, the change is on disk and the alarm is scheduled (or
+ * cancelled).
+ * </p>
+ */
+class AlarmWriter {
+    /**
+     * The time changes are collected before they are written, in milliseconds
+     */
+    private static final long WRITE_WINDOW = 10;
+
+    /**
+     * How long a shutdown waits for the queued changes to be written, in milliseconds
+     */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private final Context context;
+    private final AlarmStore alarmStore;
+    private final Runnable afterWrite;
+    private final LoggedScheduledExecutor writer;
+    private final ConcurrentLinkedQueue<Change> changes;
+    private final AtomicBoolean flushScheduled;
+
+    /**
+     * Creates a new AlarmWriter
+     *
+     * @param context the context of the addOn
+     * @param alarmStore the store to write to
+     * @param afterWrite run after every written batch, before the futures of the batch are completed
+     */
+    AlarmWriter(Context context, AlarmStore alarmStore, Runnable afterWrite) {
+        this.context = context;
+        this.alarmStore = alarmStore;
+        this.afterWrite = afterWrite;
+        this.writer = new LoggedScheduledExecutor(context, 1);
+        this.changes = new ConcurrentLinkedQueue<>();
+        this.flushScheduled = new AtomicBoolean(false);
+    }
+
+    /**
+     * Queues alarms to be stored
+     *
+     * @param alarms the alarms to store, as name and settings string
+     * @param immediately true if the changes should be written right away instead of waiting for more changes
+     * @return one future per alarm, in the order of the map, that completes with true once the alarm is stored and
+     *         scheduled
+     */
+    List<CompletableFuture<Boolean>> putAll(Map<String, String> alarms, boolean immediately) {
+        List<Change> queued = new ArrayList<>(alarms.size());
+        for (Map.Entry<String, String> alarm : alarms.entrySet()) {
+            queued.add(new Change(alarm.getKey(), alarm.getValue()));
+        }
+        return enqueue(queued, immediately);
+    }
+
+    /**
+     * Queues alarms to be removed
+     *
+     * @param alarmNames the names of the alarms to remove
+     * @param immediately true if the changes should be written right away instead of waiting for more changes
+     * @return one future per alarm, in the order of the collection, that completes with true if the alarm existed,
+     *         once it is removed and cancelled
+     */
+    List<CompletableFuture<Boolean>> removeAll(Collection<String> alarmNames, boolean immediately) {
+        List<Change> queued = new ArrayList<>(alarmNames.size());
+        for (String alarmName : alarmNames) {
+            queued.add(new Change(alarmName, null));
+        }
+        return enqueue(queued, immediately);
+    }
+
+    /**
+     * Writes the changes that are already queued and stops the writer thread. Waits for the write, because it
+     * reschedules the alarms.
+     */
+    void shutdown() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        writer.execute(this::flush);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                context.getLogger().warn("The alarm writer did not stop within " + SHUTDOWN_TIMEOUT + " ms");
+            }
+        } catch (InterruptedException e) {
+            context.getLogger().warn("Interrupted while waiting for the alarm writer to stop");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<CompletableFuture<Boolean>> enqueue(List<Change> queued, boolean immediately) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(queued.size());
+        for (Change change : queued) {
+            changes.add(change);
+            futures.add(change.future);
+        }
+
+        if (immediately) {
+            writer.execute(this::flush);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            writer.schedule(this::flush, WRITE_WINDOW, TimeUnit.MILLISECONDS);
+        }
+        return futures;
+    }
+
+    /**
+     * Writes all queued changes as one batch. Only the last change of an alarm matters for the store: removals are
+     * written before puts, so an alarm that is put after it was removed in the same batch is stored.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        List<Change> batch = new ArrayList<>();
+        Change change;
+        while ((change = changes.poll()) != null) {
+            batch.add(change);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        LinkedHashMap<String, String> puts = new LinkedHashMap<>();
+        LinkedHashSet<String> removes = new LinkedHashSet<>();
+        for (Change queued : batch) {
+            if (queued.alarmSettings != null) {
+                puts.put(queued.alarmName, queued.alarmSettings);
+            } else {
+                queued.putInBatch = puts.remove(queued.alarmName) != null;
+                removes.add(queued.alarmName);
+            }
+        }
+
+        try {
+            Set<String> removed = removes.isEmpty() ? Collections.emptySet() : alarmStore.removeAll(removes);
+            if (!puts.isEmpty()) {
+                alarmStore.putAll(puts);
+            }
+            afterWrite.run();
+
+            // an alarm that was removed from the store counts as removed only for the first removal of the batch
+            Set<String> reported = new HashSet<>();
+            for (Change written : batch) {
+                written.future.complete(written.alarmSettings != null || written.putInBatch
+                        || (removed.contains(written.alarmName) && reported.add(written.alarmName)));
+            }
+        } catch (Exception e) {
+            context.getLogger().error("Unable to write " + batch.size() + " alarm changes", e);
+            for (Change failed : batch) {
+                failed.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A queued put (with settings) or removal (without settings) of an alarm
+     */
+    private static class Change {
+        private final String alarmName;
+        private final String alarmSettings;
+        private final CompletableFuture<Boolean> future;
+        private boolean putInBatch;
+
+        Change(String alarmName, String alarmSettings) {
+            this.alarmName = alarmName;
+            this.alarmSettings = alarmSettings;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
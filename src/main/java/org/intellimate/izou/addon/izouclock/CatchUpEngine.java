@@ -0,0 +1,164 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.addon.izouclock.subclasses.CatchUpPolicy;
+import org.intellimate.izou.sdk.Context;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * The CatchUpEngine finds the alarms that missed their time and decides, with the {@link CatchUpPolicy} of every
+ * alarm, whether they still go off late or are skipped.
+ * <p>
+ * It keeps an index of the next time every alarm goes off, sorted by that time. When the addOn starts (with the times
+ * saved before it stopped) or when the host was suspended, only the missed window is replayed: the alarms that went
+ * missing are found with a single range query on the index, no matter how many alarms there are.
+ * </p>
+ */
+class CatchUpEngine {
+    private final Context context;
+    private final TreeMap<Long, Set<String>> alarmsByNextFire;
+    private final HashMap<String, Long> nextFireOfAlarm;
+    private final AtomicLong lateFires;
+    private final AtomicLong skippedFires;
+
+    /**
+     * Creates a new, empty CatchUpEngine
+     *
+     * @param context the context of the addOn
+     */
+    CatchUpEngine(Context context) {
+        this.context = context;
+        alarmsByNextFire = new TreeMap<>();
+        nextFireOfAlarm = new HashMap<>();
+        lateFires = new AtomicLong();
+        skippedFires = new AtomicLong();
+    }
+
+    /**
+     * Sets the next time the alarm goes off
+     *
+     * @param alarm the name of the alarm
+     * @param nextFire the next time, as local epoch millisecond
+     */
+    synchronized void setNextFire(String alarm, long nextFire) {
+        remove(alarm);
+        nextFireOfAlarm.put(alarm, nextFire);
+        alarmsByNextFire.computeIfAbsent(nextFire, time -> new HashSet<>()).add(alarm);
+    }
+
+    /**
+     * Moves the next time the alarm goes off on by the given period, for example after a weekly alarm went off
+     *
+     * @param alarm the name of the alarm
+     * @param period the period in milliseconds
+     */
+    synchronized void advanceNextFire(String alarm, long period) {
+        Long nextFire = nextFireOfAlarm.get(alarm);
+        if (nextFire != null) {
+            setNextFire(alarm, nextFire + period);
+        }
+    }
+
+    /**
+     * Removes the alarm from the index
+     *
+     * @param alarm the name of the alarm
+     */
+    synchronized void remove(String alarm) {
+        Long nextFire = nextFireOfAlarm.remove(alarm);
+        if (nextFire == null) {
+            return;
+        }
+        Set<String> alarms = alarmsByNextFire.get(nextFire);
+        if (alarms != null && alarms.remove(alarm) && alarms.isEmpty()) {
+            alarmsByNextFire.remove(nextFire);
+        }
+    }
+
+    /**
+     * Replays the missed window: every alarm that should have gone off in the window is removed from the index and
+     * either goes off late or is skipped, depending on its policy. The caller has to set the next time of the replayed
+     * alarms again.
+     *
+     * @param from the start of the window (inclusive), as local epoch millisecond
+     * @param to the end of the window (exclusive), as local epoch millisecond
+     * @param now the current time, as local epoch millisecond
+     * @param policyOf gets the policy of an alarm
+     * @param fireLate fires an alarm that goes off late
+     * @param skip skips an alarm
+     * @return the replayed alarms, in the order of the time they missed
+     */
+    List<String> replay(long from, long to, long now, Function<String, CatchUpPolicy> policyOf,
+                        Consumer<String> fireLate, Consumer<String> skip) {
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<String> missed = new ArrayList<>();
+        List<Long> missedAt = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<Long, Set<String>> entry : alarmsByNextFire.subMap(from, true, to, false).entrySet()) {
+                for (String alarm : entry.getValue()) {
+                    missed.add(alarm);
+                    missedAt.add(entry.getKey());
+                }
+            }
+            for (String alarm : missed) {
+                remove(alarm);
+            }
+        }
+
+        int late = 0;
+        for (int i = 0; i < missed.size(); i++) {
+            String alarm = missed.get(i);
+            long lateness = now - missedAt.get(i);
+            if (policyOf.apply(alarm).allows(lateness)) {
+                context.getLogger().debug("Alarm " + alarm + " missed its time by " + lateness
+                        + " ms and goes off late");
+                fireLate.accept(alarm);
+                late++;
+            } else {
+                context.getLogger().debug("Alarm " + alarm + " missed its time by " + lateness + " ms and is skipped");
+                skip.accept(alarm);
+            }
+        }
+        lateFires.addAndGet(late);
+        skippedFires.addAndGet(missed.size() - late);
+        if (!missed.isEmpty()) {
+            context.getLogger().debug(missed.size() + " alarms missed their time, " + late + " of them go off late");
+        }
+        return missed;
+    }
+
+    /**
+     * Counts alarms that missed their time and were replayed without the index, like the alarms of the
+     * {@link org.intellimate.izou.addon.izouclock.subclasses.AlarmTable}
+     *
+     * @param late the number of alarms that went off late
+     * @param skipped the number of alarms that were skipped
+     */
+    void countReplayed(long late, long skipped) {
+        lateFires.addAndGet(late);
+        skippedFires.addAndGet(skipped);
+    }
+
+    /**
+     * Gets the number of alarms that missed their time and went off late
+     *
+     * @return the number of late fires
+     */
+    long getLateFires() {
+        return lateFires.get();
+    }
+
+    /**
+     * Gets the number of alarms that missed their time and were skipped
+     *
+     * @return the number of skipped fires
+     */
+    long getSkippedFires() {
+        return skippedFires.get();
+    }
+}
@@ -2,16 +2,24 @@ package org.intellimate.izou.addon.izouclock;
 
 import org.intellimate.izou.addon.izouclock.subclasses.AlarmActivator;
 import org.intellimate.izou.addon.izouclock.subclasses.AlarmRepeatSettings;
+import org.intellimate.izou.addon.izouclock.subclasses.AlarmTable;
+import org.intellimate.izou.addon.izouclock.subclasses.CatchUpPolicy;
+import org.intellimate.izou.addon.izouclock.subclasses.EventIds;
+import org.intellimate.izou.addon.izouclock.subclasses.RecurrenceRule;
 import org.intellimate.izou.sdk.Context;
 import org.intellimate.izou.sdk.activator.Activator;
 import org.intellimate.izou.sdk.events.CommonEvents;
 import org.intellimate.izou.sdk.properties.PropertiesAssistant;
 import org.intellimate.izou.system.file.FileSubscriber;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -26,11 +34,107 @@ public class ClockActivator extends Activator implements FileSubscriber {
      */
     public static final String ID = ClockAddOn.class.getCanonicalName();
     public static final String CLOCK_EVENT_ID = ClockAddOn.class.getCanonicalName() + "clockEvent";
-    private final long SECONDS_IN_WEEK = 7 * 24 * 60 * 60;
+    /**
+     * The name of the property that selects the {@link AlarmScheduler}, either "executor" (default) or "timingWheel"
+     */
+    public static final String SCHEDULER_PROPERTY = "alarmScheduler";
+
+    /**
+     * The name of the property that selects the {@link AlarmStore}, either "properties" (default) or "log"
+     */
+    public static final String STORE_PROPERTY = "alarmStore";
+
+    /**
+     * The name of the property that turns on coalescing, meaning that all alarms that go off at the same second are
+     * fired together as a single event (true) instead of one event per alarm (false, default)
+     */
+    public static final String COALESCING_PROPERTY = "alarmCoalescing";
+
+    /**
+     * The prefix of the names under which the instants of coalesced alarms are scheduled
+     */
+    private static final String INSTANT_PREFIX = "instant:";
+
+    /**
+     * The name under which the last second the {@link AlarmTable} was checked up to is saved in the alarm state file
+     */
+    private static final String TABLE_CHECKED_UNTIL = "alarmTable:";
+
+    /**
+     * The name of the property that sets the number of threads alarms are fired on (20 by default)
+     */
+    public static final String THREADS_PROPERTY = "alarmThreads";
+    private static final int DEFAULT_THREADS = 20;
+
+    /**
+     * The name of the property that sets how long (in milliseconds) no change has to come in before the alarms are
+     * reloaded (200 by default)
+     */
+    public static final String QUIET_PERIOD_PROPERTY = "reloadQuietPeriod";
+    private static final int DEFAULT_QUIET_PERIOD = 200;
+
+    /**
+     * The name of the property that sets the longest time (in milliseconds) a change waits before the alarms are
+     * reloaded (2000 by default)
+     */
+    public static final String MAX_DELAY_PROPERTY = "reloadMaxDelay";
+    private static final int DEFAULT_MAX_DELAY = 2000;
+
+    /**
+     * The name of the property that sets how early (in milliseconds) an alarm with a millisecond may go off (0 by
+     * default)
+     */
+    public static final String EARLY_TOLERANCE_PROPERTY = "alarmEarlyTolerance";
+    private static final int DEFAULT_EARLY_TOLERANCE = 0;
+
+    /**
+     * The name of the property that sets how late (in milliseconds) an alarm with a millisecond may go off before it is
+     * skipped (1000 by default)
+     */
+    public static final String LATE_TOLERANCE_PROPERTY = "alarmLateTolerance";
+    private static final int DEFAULT_LATE_TOLERANCE = 1000;
+
+    /**
+     * The name of the property that sets the default {@link CatchUpPolicy} of alarms that missed their time: "skip"
+     * (default), "late" or the number of seconds an alarm may be late
+     */
+    public static final String CATCH_UP_PROPERTY = "alarmCatchUp";
+
+    /**
+     * How much earlier than its deadline an alarm with a millisecond is queued on the executor, so it can wait for the
+     * deadline itself
+     */
+    private static final long PRECISE_LEAD = TimeUnit.MILLISECONDS.toNanos(2);
+    private final long SECONDS_IN_WEEK = TimeSource.SECONDS_IN_WEEK;
+    private final TimeSource timeSource;
+    private final String instanceName;
     private LoggedScheduledExecutor executorService;
-    private HashMap<String, ScheduledFuture<?>> scheduledFutureMap;
-    private HashMap<String, Boolean> alarmRepeatMap;
+    private AlarmScheduler alarmScheduler;
+    private ExecutorAlarmScheduler preciseScheduler;
+    private ConcurrentHashMap<String, DeadlineTask> deadlineTasks;
+    private AlarmStore alarmStore;
+    private AlarmStateFile alarmState;
+    private ConcurrentHashMap<String, AtomicBoolean> alarmRepeatMap;
+    private ConcurrentHashMap<String, AlarmRepeatSettings> scheduledSettingsMap;
+    private volatile AlarmTable alarmTable;
+    private ScheduledFuture<?> tableCheck;
+    private long tableCheckedUntil;
+    private HashMap<String, Integer> firedTableAlarms;
     private AlarmActivator alarmActivator;
+    private DriftMonitor driftMonitor;
+    private ReloadDebouncer reloadDebouncer;
+    private final ClockController clockController;
+    private final boolean coalescing;
+    private ConcurrentHashMap<Integer, Set<String>> alarmsByInstant;
+    private ConcurrentHashMap<String, Integer> instantOfAlarm;
+    private final AtomicLong savedEvents;
+    private final long earlyTolerance;
+    private final long lateTolerance;
+    private final LatencyHistogram fireJitter;
+    private final AtomicLong missedDeadlines;
+    private final CatchUpEngine catchUpEngine;
+    private final CatchUpPolicy defaultCatchUpPolicy;
+    private boolean caughtUpOnStart;
     private Consumer<PropertiesAssistant> propertiesAssistantConsumer = PropertiesAssistant -> update();
 
     /**
@@ -39,11 +143,191 @@ public class ClockActivator extends Activator implements FileSubscriber {
      * @param context The context of the addOn
      */
     public ClockActivator(Context context) {
-        super(context, ID);
-        executorService = new LoggedScheduledExecutor(context, 20);
-        alarmRepeatMap = new HashMap<>();
-        scheduledFutureMap = new HashMap<>();
-        new ClockController(context, this);
+        this(context, TimeSource.getDefault());
+    }
+
+    /**
+     * Creates a new ClockActivator object that uses the given {@link TimeSource} to get the current time.
+     *
+     * @param context The context of the addOn
+     * @param timeSource The source of the current time
+     */
+    public ClockActivator(Context context, TimeSource timeSource) {
+        this(context, timeSource, ClockRouter.DEFAULT_INSTANCE);
+    }
+
+    /**
+     * Creates a new ClockActivator object for a named clock instance. Every instance has its own alarms, alarm store,
+     * threads and {@link ClockController}, so instances don't affect each other. Only the default instance contains the
+     * alarms of the properties file, the alarms of all other instances are stored in their own alarm log.
+     *
+     * @param context The context of the addOn
+     * @param timeSource The source of the current time
+     * @param instanceName The name of the clock instance, see {@link ClockRouter}
+     * @throws IllegalStateException if the alarm log of a named instance can not be opened
+     */
+    public ClockActivator(Context context, TimeSource timeSource, String instanceName) {
+        super(context, isDefaultInstance(instanceName) ? ID : ID + "." + instanceName);
+        this.timeSource = timeSource;
+        this.instanceName = instanceName;
+        executorService = new LoggedScheduledExecutor(context, getIntProperty(THREADS_PROPERTY, DEFAULT_THREADS));
+        alarmScheduler = createAlarmScheduler();
+        // alarms with a millisecond always go straight to the executor, whatever scheduler is selected
+        preciseScheduler = new ExecutorAlarmScheduler(executorService);
+        deadlineTasks = new ConcurrentHashMap<>();
+        alarmRepeatMap = new ConcurrentHashMap<>();
+        scheduledSettingsMap = new ConcurrentHashMap<>();
+        alarmTable = AlarmTable.empty();
+        tableCheckedUntil = Long.MIN_VALUE;
+        firedTableAlarms = new HashMap<>();
+        coalescing = Boolean.parseBoolean(getContext().getPropertiesAssistant().getProperty(COALESCING_PROPERTY));
+        alarmsByInstant = new ConcurrentHashMap<>();
+        instantOfAlarm = new ConcurrentHashMap<>();
+        savedEvents = new AtomicLong();
+        earlyTolerance = TimeUnit.MILLISECONDS.toNanos(
+                getIntProperty(EARLY_TOLERANCE_PROPERTY, DEFAULT_EARLY_TOLERANCE, 0));
+        lateTolerance = TimeUnit.MILLISECONDS.toNanos(
+                getIntProperty(LATE_TOLERANCE_PROPERTY, DEFAULT_LATE_TOLERANCE, 0));
+        fireJitter = new LatencyHistogram();
+        missedDeadlines = new AtomicLong();
+        catchUpEngine = new CatchUpEngine(context);
+        defaultCatchUpPolicy = createDefaultCatchUpPolicy();
+        alarmStore = createAlarmStore();
+        alarmState = createAlarmState();
+        driftMonitor = new DriftMonitor(context, timeSource, executorService, this::clockJumped);
+        reloadDebouncer = new ReloadDebouncer(executorService, this::reload,
+                getIntProperty(QUIET_PERIOD_PROPERTY, DEFAULT_QUIET_PERIOD),
+                getIntProperty(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY));
+        clockController = new ClockController(context, this, alarmStore);
+    }
+
+    private static boolean isDefaultInstance(String instanceName) {
+        return ClockRouter.DEFAULT_INSTANCE.equals(instanceName);
+    }
+
+    /**
+     * Gets the name of the clock instance of the activator
+     *
+     * @return the name of the clock instance
+     */
+    public String getInstanceName() {
+        return instanceName;
+    }
+
+    /**
+     * Gets a positive integer from the properties file
+     *
+     * @param property the name of the property
+     * @param defaultValue the value to use if the property is not set or not a positive integer
+     * @return the value of the property
+     */
+    private int getIntProperty(String property, int defaultValue) {
+        return getIntProperty(property, defaultValue, 1);
+    }
+
+    /**
+     * Gets an integer that is at least the given minimum from the properties file
+     *
+     * @param property the name of the property
+     * @param defaultValue the value to use if the property is not set or not an integer
+     * @param minimum the lowest allowed value
+     * @return the value of the property
+     */
+    private int getIntProperty(String property, int defaultValue, int minimum) {
+        String value = getContext().getPropertiesAssistant().getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(minimum, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            error("Unable to convert " + property + " to an integer, using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Creates the {@link AlarmStore} selected in the properties file. If none is selected, or the log can not be
+     * opened, alarms are stored in the properties file.
+     *
+     * @return the alarm store to use
+     */
+    private AlarmStore createAlarmStore() {
+        if (!isDefaultInstance(instanceName)) {
+            try {
+                return new LogAlarmStore(getContext(),
+                        Paths.get(ClockAddOn.ADDON_DATA_PATH_LOCAL + "alarms-" + instanceName + ".log"));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open the alarm log of clock instance " + instanceName, e);
+            }
+        }
+
+        String store = getContext().getPropertiesAssistant().getProperty(STORE_PROPERTY);
+        if (store != null && store.trim().equals("log")) {
+            try {
+                LogAlarmStore logAlarmStore = new LogAlarmStore(getContext(),
+                        Paths.get(ClockAddOn.ADDON_DATA_PATH_LOCAL + "alarms.log"));
+                // changes to the log are not seen by the properties listener, the ClockController reloads the alarms
+                // after every write instead
+                debug("Using the alarm log to store alarms");
+                return logAlarmStore;
+            } catch (IOException e) {
+                error("Unable to open the alarm log, storing alarms in the properties file instead");
+            }
+        }
+        return new PropertiesAlarmStore(getContext());
+    }
+
+    /**
+     * Gets the default {@link CatchUpPolicy} from the properties file
+     *
+     * @return the default catch-up policy of the alarms
+     */
+    private CatchUpPolicy createDefaultCatchUpPolicy() {
+        String policy = getContext().getPropertiesAssistant().getProperty(CATCH_UP_PROPERTY);
+        if (policy == null) {
+            return CatchUpPolicy.SKIP;
+        }
+        try {
+            return CatchUpPolicy.parse(policy);
+        } catch (IllegalStateException e) {
+            error("Unable to read " + CATCH_UP_PROPERTY + ", missed alarms are skipped");
+            return CatchUpPolicy.SKIP;
+        }
+    }
+
+    /**
+     * Opens the {@link AlarmStateFile} of the clock instance, which remembers across restarts which one-shot alarms
+     * already went off
+     *
+     * @return the alarm state file, or null if it can not be opened
+     */
+    private AlarmStateFile createAlarmState() {
+        if (ClockAddOn.ADDON_DATA_PATH_LOCAL == null) {
+            return null;
+        }
+        String fileName = isDefaultInstance(instanceName) ? "alarm-state.bin" : "alarm-state-" + instanceName + ".bin";
+        try {
+            return new AlarmStateFile(getContext(), Paths.get(ClockAddOn.ADDON_DATA_PATH_LOCAL + fileName));
+        } catch (IOException e) {
+            error("Unable to open the alarm state file, one-shot alarms may go off again after a restart");
+            return null;
+        }
+    }
+
+    /**
+     * Creates the {@link AlarmScheduler} selected in the properties file. If none is selected, every alarm gets its own
+     * future on the executor.
+     *
+     * @return the alarm scheduler to use
+     */
+    private AlarmScheduler createAlarmScheduler() {
+        String scheduler = getContext().getPropertiesAssistant().getProperty(SCHEDULER_PROPERTY);
+        if (scheduler != null && scheduler.trim().equals("timingWheel")) {
+            debug("Using the timing wheel alarm scheduler");
+            return new TimingWheelAlarmScheduler(getContext(), executorService);
+        }
+        return new ExecutorAlarmScheduler(executorService);
     }
 
     /**
@@ -52,120 +336,852 @@ public class ClockActivator extends Activator implements FileSubscriber {
      * @param settingsMap the settings map (as a {@link java.util.HashMap}) to be updated.
      */
     public void repeatsMapUpdate(HashMap<String, AlarmRepeatSettings> settingsMap) {
-        alarmRepeatMap.entrySet()
-                .stream()
-                .filter(repeat -> !settingsMap.containsKey(repeat.getKey()))
-                .forEach(repeat -> alarmRepeatMap.remove(repeat.getKey()));
+        alarmRepeatMap.keySet().removeIf(alarm -> !settingsMap.containsKey(alarm));
     }
 
     @Override
     public void activatorStarts() {
         getContext().getPropertiesAssistant().registerUpdateListener(propertiesAssistantConsumer);
-        alarmActivator = new AlarmActivator(getContext());
-        repeatsMapUpdate(alarmActivator.getSettingsMap());
-        update();
+        reloadNow();
+        driftMonitor.start();
         stop();
     }
 
-    private void checkAndFireEvent(String alarmName, boolean repeatSetting, List<String> eventsToFire)
-            throws InterruptedException {
+    private void checkAndFireEvent(String alarmName, AlarmRepeatSettings settings, boolean repeatSetting,
+                                   List<String> eventsToFire) throws InterruptedException {
+        if (checkRepeat(alarmName, repeatSetting)) {
+            saveFired(alarmName, settings);
+            fire(CommonEvents.Type.RESPONSE_TYPE, eventsToFire);
+        }
+    }
+
+    /**
+     * Saves that the alarm went off. A one-shot alarm is marked as fired in the alarm state file (before its event is
+     * fired, so it never goes off twice, not even if the addOn stops right after), the next time of a weekly alarm is
+     * moved on by a week.
+     *
+     * @param alarmName the name of the alarm
+     * @param settings the settings of the alarm
+     */
+    private void saveFired(String alarmName, AlarmRepeatSettings settings) {
+        if (!settings.isState()) {
+            catchUpEngine.remove(alarmName);
+            if (alarmState != null) {
+                alarmState.markFired(alarmName, settings.hashCode());
+            }
+        } else if (settings.getRecurrenceRule() == null) {
+            catchUpEngine.advanceNextFire(alarmName, SECONDS_IN_WEEK * 1000);
+            if (alarmState != null) {
+                alarmState.advanceNextFire(alarmName, settings.hashCode(), SECONDS_IN_WEEK * 1000);
+            }
+        }
+    }
+
+    /**
+     * Saves the next time the alarm goes off, in the index of the {@link CatchUpEngine} and in the alarm state file
+     *
+     * @param alarmName the name of the alarm
+     * @param settings the settings of the alarm
+     * @param nextFire the next time the alarm goes off, as local epoch millisecond
+     */
+    private void saveNextFire(String alarmName, AlarmRepeatSettings settings, long nextFire) {
+        catchUpEngine.setNextFire(alarmName, nextFire);
+        if (alarmState != null) {
+            alarmState.setNextFire(alarmName, settings.hashCode(), nextFire);
+        }
+    }
+
+    /**
+     * Gets the next time the alarm goes off, after the current time
+     *
+     * @param settings the settings of the alarm
+     * @return the next time, as local epoch millisecond
+     */
+    private long nextFireFromNow(AlarmRepeatSettings settings) {
+        long now = timeSource.localEpochMilli();
+        int millis = Math.max(0, settings.getMillis());
+        if (settings.getRecurrenceRule() != null) {
+            return settings.getRecurrenceRule().nextFireAfter(Math.floorDiv(now, 1000)) * 1000 + millis;
+        }
+        long alarmMillis = TimeSource.secondOfWeek(settings.getDay(), settings.getHours(), settings.getMinutes(),
+                settings.getSeconds()) * 1000L + millis;
+        long delay = Math.floorMod(alarmMillis - timeSource.millisOfWeek(), SECONDS_IN_WEEK * 1000);
+        return now + (delay == 0 ? SECONDS_IN_WEEK * 1000 : delay);
+    }
+
+    /**
+     * Gets the catch-up policy of the alarm, or the default policy if the alarm has none
+     */
+    private CatchUpPolicy getCatchUpPolicy(String alarmName) {
+        AlarmRepeatSettings settings = scheduledSettingsMap.get(alarmName);
+        if (settings == null || settings.getCatchUpPolicy() == null) {
+            return defaultCatchUpPolicy;
+        }
+        return settings.getCatchUpPolicy();
+    }
+
+    /**
+     * Replays the alarms that missed their time between the given time and the start of the current second (the
+     * alarms of the current second are still scheduled as usual), see {@link CatchUpEngine}
+     *
+     * @param from the start of the missed window, as local epoch millisecond
+     * @return the alarms that missed their time
+     */
+    private List<String> catchUp(long from) {
+        long now = timeSource.localEpochMilli();
+        long to = now - Math.floorMod(now, 1000);
+        return catchUpEngine.replay(from, to, now, this::getCatchUpPolicy, this::fireLate, this::skipMissed);
+    }
+
+    /**
+     * Fires an alarm that missed its time, once, and saves its next time
+     */
+    private void fireLate(String alarmName) {
+        AlarmRepeatSettings settings = scheduledSettingsMap.get(alarmName);
+        if (settings == null) {
+            return;
+        }
+        if (checkRepeat(alarmName, settings.isState())) {
+            if (!settings.isState() && alarmState != null) {
+                alarmState.markFired(alarmName, settings.hashCode());
+            }
+            fireOnExecutor(alarmName, settings.getEventsToFire());
+        }
+        settleMissed(alarmName, settings);
+    }
+
+    /**
+     * Fires the events of the alarm on a thread of the executor
+     */
+    private void fireOnExecutor(String alarmName, List<String> eventsToFire) {
+        executorService.execute(() -> {
+            try {
+                fire(CommonEvents.Type.RESPONSE_TYPE, eventsToFire);
+            } catch (InterruptedException e) {
+                error("Unable to fire alarm: " + alarmName);
+            }
+        });
+    }
+
+    /**
+     * Skips an alarm that missed its time and saves its next time. A one-shot alarm that is skipped counts as gone off.
+     */
+    private void skipMissed(String alarmName) {
+        AlarmRepeatSettings settings = scheduledSettingsMap.get(alarmName);
+        if (settings == null) {
+            return;
+        }
+        if (!settings.isState() && checkRepeat(alarmName, false) && alarmState != null) {
+            alarmState.markFired(alarmName, settings.hashCode());
+        }
+        settleMissed(alarmName, settings);
+    }
+
+    /**
+     * Saves the next time of an alarm that missed its time and went off late or was skipped. A one-shot alarm is done
+     * then, so it is unscheduled instead and does not come back to the index.
+     */
+    private void settleMissed(String alarmName, AlarmRepeatSettings settings) {
+        if (settings.isState()) {
+            saveNextFire(alarmName, settings, nextFireFromNow(settings));
+        } else {
+            unscheduleAlarm(alarmName);
+        }
+    }
+
+    /**
+     * Gets the number of alarms that missed their time (while the addOn was not running or the host was suspended)
+     * and went off late, see {@link CatchUpPolicy}
+     *
+     * @return the number of late fires
+     */
+    public long getLateFires() {
+        return catchUpEngine.getLateFires();
+    }
+
+    /**
+     * Gets the number of alarms that missed their time (while the addOn was not running or the host was suspended)
+     * and were skipped, see {@link CatchUpPolicy}
+     *
+     * @return the number of skipped fires
+     */
+    public long getSkippedFires() {
+        return catchUpEngine.getSkippedFires();
+    }
+
+    /**
+     * Checks whether the alarm may go off: repeating alarms always may, others only the first time. The check of an
+     * alarm that does not repeat is a compare-and-set, so it goes off exactly once even if it is checked on several
+     * threads at the same time.
+     *
+     * @param alarmName the name of the alarm
+     * @param repeatSetting true if the alarm repeats, else false
+     * @return true if the alarm may go off, else false
+     */
+    private boolean checkRepeat(String alarmName, boolean repeatSetting) {
         debug("Checking repeat permissions for " + alarmName);
-        if (!alarmRepeatMap.containsKey(alarmName))
-            alarmRepeatMap.put(alarmName, true);
-        if (alarmRepeatMap.get(alarmName) || repeatSetting) {
-            alarmRepeatMap.put(alarmName, repeatSetting);
+        AtomicBoolean mayFire = alarmRepeatMap.computeIfAbsent(alarmName, alarm -> new AtomicBoolean(true));
+        if (repeatSetting) {
+            mayFire.set(true);
+            return true;
+        }
+        return mayFire.compareAndSet(true, false);
+    }
 
-            fire(CommonEvents.Type.RESPONSE_TYPE, eventsToFire);
+    /**
+     * Fires all alarms of the instant at once: the events of all alarms that may go off are collected (without
+     * duplicates) and fired as a single event.
+     *
+     * @param instant the instant, as second of the week
+     */
+    private void fireInstant(int instant) {
+        List<String> alarms = new ArrayList<>();
+        List<AlarmRepeatSettings> settingsList = new ArrayList<>();
+        Set<String> group = alarmsByInstant.get(instant);
+        if (group == null) {
+            return;
+        }
+        for (String alarm : group) {
+            alarms.add(alarm);
+            settingsList.add(scheduledSettingsMap.get(alarm));
+        }
+
+        LinkedHashSet<String> events = new LinkedHashSet<>();
+        int firedAlarms = 0;
+        int requestedEvents = 0;
+        for (int i = 0; i < alarms.size(); i++) {
+            AlarmRepeatSettings settings = settingsList.get(i);
+            if (settings != null && checkRepeat(alarms.get(i), settings.isState())) {
+                saveFired(alarms.get(i), settings);
+                List<String> eventsToFire = settings.getEventsToFire();
+                events.addAll(eventsToFire);
+                requestedEvents += eventsToFire.size();
+                firedAlarms++;
+            }
+        }
+        if (firedAlarms == 0) {
+            return;
         }
+
+        try {
+            fire(CommonEvents.Type.RESPONSE_TYPE, new ArrayList<>(events));
+        } catch (InterruptedException e) {
+            error("Unable to fire the alarms: " + alarms);
+            return;
+        }
+        long saved = savedEvents.addAndGet(firedAlarms - 1);
+        debug("Fired " + firedAlarms + " alarms as a single event with " + events.size() + " of " + requestedEvents
+                + " requested event IDs, " + saved + " events saved so far");
     }
 
+    /**
+     * Gets the number of events that were saved by coalescing alarms that go off at the same time, meaning the number
+     * of alarms that went off without needing their own event
+     *
+     * @return the number of saved events
+     */
+    public long getSavedEvents() {
+        return savedEvents.get();
+    }
+
+    /**
+     * Requests a reload of the alarms. Changes that come in quickly one after another are handled by a single reload,
+     * see {@link ReloadDebouncer}.
+     */
     @Override
     public void update() {
+        reloadDebouncer.request();
+    }
+
+    /**
+     * Reloads the alarms right away, together with all reloads that are requested but did not run yet
+     */
+    void reloadNow() {
+        reloadDebouncer.reloadNow();
+    }
+
+    /**
+     * Gets the debouncer in front of the reloads, for example to see how many reloads were suppressed
+     *
+     * @return the reload debouncer
+     */
+    public ReloadDebouncer getReloadDebouncer() {
+        return reloadDebouncer;
+    }
+
+    private synchronized void reload() {
         debug("Updating alarms");
-        alarmActivator = new AlarmActivator(getContext());
+        long loadStart = System.nanoTime();
+        // the event properties may have changed together with the alarms
+        EventIds.invalidate();
+        alarmActivator = new AlarmActivator(getContext(), alarmStore.getAlarms(), isDefaultInstance(instanceName));
+        AlarmTable table = alarmActivator.getAlarmTable();
         repeatsMapUpdate(alarmActivator.getSettingsMap());
+        debug("Loaded " + alarmActivator.size() + " alarms (" + table.size() + " in the alarm table, "
+                + alarmActivator.getErrors().size() + " errors) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart) + " ms");
 
-        DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-        Date date = new Date();
-        String dateTime = dateFormat.format(date);
+        int currentSecondOfWeek = timeSource.secondOfWeek();
+
+        HashMap<String, AlarmRepeatSettings> repeatSettings = alarmActivator.getSettingsMap();
+        HashMap<String, AlarmRepeatSettings> changedSettings = diffSettings(repeatSettings);
+        restoreFiredAlarms(repeatSettings, table, changedSettings);
+        if (!caughtUpOnStart) {
+            caughtUpOnStart = true;
+            catchUpOnStart(changedSettings);
+        }
 
-        Calendar c = Calendar.getInstance();
-        c.setTime(date);
-        int dayOfWeek = c.get(Calendar.DAY_OF_WEEK);
+        resetThreads(currentSecondOfWeek, changedSettings);
+        updateTable(table);
+    }
 
-        String[] dateParts = dateTime.split(" ");
-        String[] timeParts = dateParts[1].split(":");
-        int currentHours = Integer.parseInt(timeParts[0]);
-        int currentMinutes = Integer.parseInt(timeParts[1]);
-        int currentSeconds = Integer.parseInt(timeParts[2]);
+    /**
+     * Switches to the new alarm table. The alarms of the table are not scheduled one by one, instead the table is
+     * checked once a second for the alarms that went off since the last check. The check starts with the first table,
+     * and stops while the table is empty.
+     *
+     * @param table the new alarm table
+     */
+    private void updateTable(AlarmTable table) {
+        // only the one-shot alarms that are still in the table are remembered
+        HashMap<String, Integer> stillFired = new HashMap<>();
+        if (!firedTableAlarms.isEmpty()) {
+            for (int row = 0; row < table.size(); row++) {
+                Integer settingsHash = firedTableAlarms.get(table.getName(row));
+                if (settingsHash != null) {
+                    stillFired.put(table.getName(row), settingsHash);
+                }
+            }
+        }
+        firedTableAlarms = stillFired;
+        alarmTable = table;
 
-        HashMap<String, AlarmRepeatSettings> repeatSettings = alarmActivator.getSettingsMap();
+        if (table.isEmpty()) {
+            if (tableCheck != null) {
+                tableCheck.cancel(false);
+                tableCheck = null;
+            }
+            return;
+        }
+        if (tableCheck == null) {
+            long now = timeSource.localEpochSecond();
+            long saved = alarmState != null ? alarmState.getNextFire(TABLE_CHECKED_UNTIL, 0) : -1;
+            // on start, the alarms that went off while the addOn was not running are caught up
+            tableCheckedUntil = tableCheckedUntil == Long.MIN_VALUE && saved >= 0 ? Math.floorDiv(saved, 1000)
+                    : now - 1;
+            long untilNextSecond = 1000 - Math.floorMod(timeSource.localEpochMilli(), 1000);
+            tableCheck = executorService.scheduleAtFixedRate(this::checkTable, untilNextSecond, 1000,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
 
-        clearFuturesMap();
-        resetThreads(dayOfWeek, currentHours, currentMinutes, currentSeconds, repeatSettings);
-    }
-
-    private void resetThreads(int dayOfWeek, int currentHours, int currentMinutes, int currentSeconds, HashMap<String,
-            AlarmRepeatSettings> repeatSettings) {
-        for (String alarm : repeatSettings.keySet()) {
-            //calculating seconds passed since sunday at 00:00:00, and then figuring out time interval from now until
-            //the alarm should be activated
-            AlarmRepeatSettings settings = repeatSettings.get(alarm);
-
-            debug("Calculating current time interval from sunday at 00:00:00");
-
-            //calculating current interval since sunday at 00:00:00
-            //1 is subtracted from dayOfWeek because hours of the same day will still be added
-            long currentInterval = (dayOfWeek - 1) * 24 * 60 * 60;
-            currentInterval += currentHours * 60 * 60;
-            currentInterval += currentMinutes * 60;
-            currentInterval += currentSeconds;
-
-            //calculating alarm interval since sunday at 00:00:00
-            debug("Calculating alarm time interval from sunday at 00:00:00");
-            long alarmInterval = (settings.getDay() - 1) * 24 * 60 * 60;
-            alarmInterval += settings.getHours() * 60 * 60;
-            alarmInterval += settings.getMinutes() * 60;
-            alarmInterval += settings.getSeconds();
-
-            //calculating real interval from now until alarm should be activated
-            debug("Calculating time interval until alarm");
-            long interval = calculateWaitingTime(currentInterval, alarmInterval);
-
-            Runnable runAlarm = () -> {
-                try {
-                    checkAndFireEvent(alarm, settings.isState(), settings.getEventsToFire());
-                } catch (InterruptedException e) {
-                    error("Unable to fire alarm: " + alarm);
+    /**
+     * Fires the alarms of the table that went off since the last check (at most a week ago). Alarms that went off more
+     * than a second ago missed their time, because the addOn was not running or the host was suspended, and go off
+     * late or are skipped, like {@link #defaultCatchUpPolicy} says. If the clock went back, the alarms of the repeated
+     * time go off again.
+     */
+    private synchronized void checkTable() {
+        AlarmTable table = alarmTable;
+        long now = timeSource.localEpochSecond();
+        if (now < tableCheckedUntil) {
+            tableCheckedUntil = now - 1;
+        }
+        long from = Math.max(tableCheckedUntil + 1, now - SECONDS_IN_WEEK + 1);
+        if (from > now) {
+            return;
+        }
+
+        LinkedHashSet<String> coalescedEvents = new LinkedHashSet<>();
+        int fired = 0;
+        int late = 0;
+        int skipped = 0;
+        long second = from;
+        while (second <= now) {
+            // the range is split at the end of the week, the rows are sorted by their second of the week
+            long weekStart = second - TimeSource.secondOfWeek(second);
+            long to = Math.min(now, weekStart + SECONDS_IN_WEEK - 1);
+            for (int row = table.firstRowAt((int) (second - weekStart));
+                 row < table.size() && table.getSecondOfWeek(row) <= to - weekStart; row++) {
+                String alarm = table.getName(row);
+                if (!table.isRepeat(row) && !markTableAlarmFired(alarm, table.getSettingsHash(row))) {
+                    continue;
+                }
+                long lateness = (now - weekStart - table.getSecondOfWeek(row)) * 1000;
+                // a second of difference is just the time between two checks
+                if (lateness > 1000) {
+                    if (!defaultCatchUpPolicy.allows(lateness)) {
+                        debug("Alarm " + alarm + " missed its time by " + lateness + " ms and is skipped");
+                        skipped++;
+                        continue;
+                    }
+                    debug("Alarm " + alarm + " missed its time by " + lateness + " ms and goes off late");
+                    late++;
                 }
-            };
+                if (coalescing) {
+                    coalescedEvents.addAll(table.getEvents(row));
+                } else {
+                    fireOnExecutor(alarm, table.getEvents(row));
+                }
+                fired++;
+            }
+            second = to + 1;
+        }
+        tableCheckedUntil = now;
+        if (alarmState != null) {
+            alarmState.setNextFire(TABLE_CHECKED_UNTIL, 0, now * 1000);
+        }
+        if (late > 0 || skipped > 0) {
+            catchUpEngine.countReplayed(late, skipped);
+        }
+
+        if (coalescing && fired > 0) {
+            fireOnExecutor("alarm table", new ArrayList<>(coalescedEvents));
+            long saved = savedEvents.addAndGet(fired - 1);
+            debug("Fired " + fired + " alarms of the table as a single event with " + coalescedEvents.size()
+                    + " event IDs, " + saved + " events saved so far");
+        }
+    }
+
+    /**
+     * Marks a one-shot alarm of the table as fired (in the alarm state file before its event is fired, like
+     * {@link #saveFired(String, AlarmRepeatSettings)}), unless it already went off with the same settings
+     *
+     * @param alarmName the name of the alarm
+     * @param settingsHash the hash of the settings of the alarm
+     * @return true if the alarm may go off, false if it already went off
+     */
+    private boolean markTableAlarmFired(String alarmName, int settingsHash) {
+        Integer fired = firedTableAlarms.get(alarmName);
+        if (fired != null && fired == settingsHash) {
+            return false;
+        }
+        firedTableAlarms.put(alarmName, settingsHash);
+        if (alarmState == null) {
+            return true;
+        }
+        if (alarmState.isFired(alarmName, settingsHash)) {
+            return false;
+        }
+        alarmState.markFired(alarmName, settingsHash);
+        return true;
+    }
 
-            String events = "";
-            for (String eventToFire : settings.getEventsToFire()) {
-                events += eventToFire + ", ";
+    /**
+     * Compares the new alarm settings with the ones that are currently scheduled. Alarms that no longer exist are
+     * cancelled right away, alarms that did not change keep running as they are.
+     *
+     * @param repeatSettings the new alarm settings
+     * @return the alarms that were added or changed and therefore have to be (re)scheduled
+     */
+    private HashMap<String, AlarmRepeatSettings> diffSettings(HashMap<String, AlarmRepeatSettings> repeatSettings) {
+        Iterator<String> iterator = scheduledSettingsMap.keySet().iterator();
+        while (iterator.hasNext()) {
+            String alarm = iterator.next();
+            if (!repeatSettings.containsKey(alarm)) {
+                debug("Cancelling removed alarm " + alarm);
+                unscheduleAlarm(alarm);
+                iterator.remove();
+            }
+        }
+
+        HashMap<String, AlarmRepeatSettings> changedSettings = new HashMap<>();
+        for (Map.Entry<String, AlarmRepeatSettings> entry : repeatSettings.entrySet()) {
+            if (!entry.getValue().equals(scheduledSettingsMap.get(entry.getKey()))) {
+                changedSettings.put(entry.getKey(), entry.getValue());
+            }
+        }
+        scheduledSettingsMap.putAll(changedSettings);
+        // an alarm that was changed is a new alarm, so a one-shot alarm may go off again (like after a restart, where
+        // the state file ignores the state saved for its old settings)
+        alarmRepeatMap.keySet().removeAll(changedSettings.keySet());
+
+        debug(changedSettings.size() + " alarms were added or changed, " + (repeatSettings.size()
+                - changedSettings.size()) + " alarms stay scheduled as they are");
+        return changedSettings;
+    }
+
+    /**
+     * Restores the state of the alarms from the alarm state file: one-shot alarms that already went off (with the same
+     * settings, possibly before a restart) are not scheduled again. The state of alarms that no longer exist is
+     * dropped.
+     *
+     * @param repeatSettings all alarm settings
+     * @param table the alarm table, the state of its one-shot alarms is looked up when they go off
+     * @param changedSettings the alarms that were added or changed, the ones that already went off are removed
+     */
+    private void restoreFiredAlarms(HashMap<String, AlarmRepeatSettings> repeatSettings, AlarmTable table,
+                                    HashMap<String, AlarmRepeatSettings> changedSettings) {
+        if (alarmState == null) {
+            return;
+        }
+        List<String> alarms = new ArrayList<>(repeatSettings.size() + table.size() + 1);
+        alarms.addAll(repeatSettings.keySet());
+        alarms.addAll(table.getNames());
+        if (!table.isEmpty()) {
+            alarms.add(TABLE_CHECKED_UNTIL);
+        }
+        alarmState.retainAll(alarms);
+        int fired = 0;
+        Iterator<Map.Entry<String, AlarmRepeatSettings>> iterator = changedSettings.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AlarmRepeatSettings> entry = iterator.next();
+            AlarmRepeatSettings settings = entry.getValue();
+            if (!settings.isState() && alarmState.isFired(entry.getKey(), settings.hashCode())) {
+                // it stays in the scheduled settings, so it is not seen as changed on the next reload
+                unscheduleAlarm(entry.getKey());
+                alarmRepeatMap.put(entry.getKey(), new AtomicBoolean(false));
+                iterator.remove();
+                fired++;
+            }
+        }
+        if (fired > 0) {
+            debug(fired + " one-shot alarms already went off and are not scheduled again");
+        }
+    }
+
+    /**
+     * Replays the alarms that missed their time while the addOn was not running, using the next times that were saved
+     * in the alarm state file before it stopped
+     *
+     * @param changedSettings the alarms that are about to be scheduled, the one-shot alarms that missed their time are
+     *                        removed
+     */
+    private void catchUpOnStart(HashMap<String, AlarmRepeatSettings> changedSettings) {
+        if (alarmState == null) {
+            return;
+        }
+        for (Map.Entry<String, AlarmRepeatSettings> entry : changedSettings.entrySet()) {
+            long nextFire = alarmState.getNextFire(entry.getKey(), entry.getValue().hashCode());
+            if (nextFire >= 0) {
+                catchUpEngine.setNextFire(entry.getKey(), nextFire);
             }
-            events = events.substring(0, events.length() - 2);
+        }
+        for (String alarm : catchUp(Long.MIN_VALUE)) {
+            AlarmRepeatSettings settings = changedSettings.get(alarm);
+            if (settings != null && !settings.isState()) {
+                changedSettings.remove(alarm);
+            }
+        }
+    }
+
+    private void resetThreads(int currentSecondOfWeek, HashMap<String, AlarmRepeatSettings> repeatSettings) {
+        for (Map.Entry<String, AlarmRepeatSettings> entry : repeatSettings.entrySet()) {
+            scheduleAlarm(entry.getKey(), entry.getValue(), currentSecondOfWeek);
+        }
+    }
+
+    private void scheduleAlarm(String alarm, AlarmRepeatSettings settings, int currentSecondOfWeek) {
+        // alarms with a rule or a millisecond are never coalesced
+        boolean single = settings.getRecurrenceRule() != null || settings.isPrecise();
+        if (coalescing && single) {
+            removeFromInstant(alarm);
+        }
+        if (!settings.isPrecise()) {
+            // the alarm may have had a millisecond before
+            cancelPrecise(alarm);
+        }
+        if (settings.getRecurrenceRule() != null) {
+            // the alarm may go off right now, so look for the next time starting with the current second
+            scheduleRule(alarm, settings, timeSource.localEpochSecond() - 1);
+            return;
+        }
+
+        //calculating seconds passed since sunday at 00:00:00 for the alarm, and then figuring out time interval
+        //from now until the alarm should be activated
+        int alarmInterval = TimeSource.secondOfWeek(settings.getDay(), settings.getHours(),
+                settings.getMinutes(), settings.getSeconds());
+        long interval = calculateWaitingTime(currentSecondOfWeek, alarmInterval);
+
+        if (coalescing && !single) {
+            debug("Scheduling " + alarm + " - alarm will trigger together with all alarms at the same time in "
+                    + interval + " seconds");
+            // the alarm may have had a recurrence rule before, then it is scheduled under its own name
+            alarmScheduler.cancel(alarm);
+            addToInstant(alarm, alarmInterval, currentSecondOfWeek);
+            saveNextFire(alarm, settings, (timeSource.localEpochSecond() + interval) * 1000);
+            return;
+        }
+
+        boolean repeat = settings.isState();
+        List<String> eventsToFire = settings.getEventsToFire();
+        Runnable runAlarm = () -> {
+            try {
+                checkAndFireEvent(alarm, settings, repeat, eventsToFire);
+            } catch (InterruptedException e) {
+                error("Unable to fire alarm: " + alarm);
+            }
+        };
+
+        if (settings.isPrecise()) {
+            long delay = getPreciseDelay(settings);
+            debug("Scheduling " + alarm + " - alarm will trigger " + String.join(", ", eventsToFire) + " in " + delay
+                    + " ms");
+            schedulePrecise(alarm, runAlarm, delay, SECONDS_IN_WEEK * 1000);
+            saveNextFire(alarm, settings, timeSource.localEpochMilli() + delay);
+            return;
+        }
+
+        debug("Scheduling " + alarm + " - alarm will trigger " + String.join(", ", eventsToFire) + " in " + interval
+                + " seconds");
+        alarmScheduler.schedule(alarm, runAlarm, interval, SECONDS_IN_WEEK, SECONDS);
+        saveNextFire(alarm, settings, (timeSource.localEpochSecond() + interval) * 1000);
+    }
+
+    /**
+     * Schedules an alarm with a millisecond: it is queued on the executor a little before its time (no matter which
+     * {@link AlarmScheduler} is selected, because a scheduler may only keep time to the second) and then waits for its
+     * deadline on {@link System#nanoTime()} itself, see {@link DeadlineTask}.
+     *
+     * @param alarm the name of the alarm
+     * @param runAlarm the alarm to run
+     * @param delay the time until the deadline, in milliseconds
+     * @param period the time between two deadlines in milliseconds, or 0 if the alarm should only go off once
+     */
+    private void schedulePrecise(String alarm, Runnable runAlarm, long delay, long period) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(period);
+        DeadlineTask deadlineTask = new DeadlineTask(getContext(), alarm, runAlarm, System.nanoTime() + delayNanos,
+                periodNanos, earlyTolerance, lateTolerance, fireJitter, missedDeadlines);
+        // the alarm may have been scheduled to the second before
+        alarmScheduler.cancel(alarm);
+        deadlineTasks.put(alarm, deadlineTask);
+        preciseScheduler.schedule(alarm, deadlineTask, Math.max(0, delayNanos - PRECISE_LEAD), periodNanos,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancels the alarm if it is scheduled with a millisecond
+     */
+    private void cancelPrecise(String alarm) {
+        if (deadlineTasks.remove(alarm) != null) {
+            preciseScheduler.cancel(alarm);
+        }
+    }
 
-            debug("Scheduling " + alarm + " - alarm will trigger " + events + " in " + interval + " seconds");
-            ScheduledFuture<?> alarmHandler = executorService.scheduleAtFixedRate(runAlarm, interval, SECONDS_IN_WEEK,
-                    SECONDS);
-            scheduledFutureMap.put(alarm, alarmHandler);
+    /**
+     * Gets the time until the next deadline of an alarm with a millisecond
+     *
+     * @param settings the settings of the alarm
+     * @return the time until the deadline, in milliseconds
+     */
+    private long getPreciseDelay(AlarmRepeatSettings settings) {
+        RecurrenceRule rule = settings.getRecurrenceRule();
+        if (rule == null) {
+            long alarmMillis = TimeSource.secondOfWeek(settings.getDay(), settings.getHours(), settings.getMinutes(),
+                    settings.getSeconds()) * 1000L + settings.getMillis();
+            return Math.floorMod(alarmMillis - timeSource.millisOfWeek(), SECONDS_IN_WEEK * 1000);
         }
+        long now = timeSource.localEpochMilli();
+        long second = Math.floorDiv(now, 1000);
+        long deadline = rule.nextFireAfter(second - 1) * 1000 + settings.getMillis();
+        if (deadline < now) {
+            deadline = rule.nextFireAfter(second) * 1000 + settings.getMillis();
+        }
+        return deadline - now;
     }
 
-    private void clearFuturesMap() {
-        for (ScheduledFuture future : scheduledFutureMap.values()) {
-            long startTime = System.currentTimeMillis();
-            long currentTime = startTime;
-            while (!future.cancel(false) || (currentTime - startTime > 30000)) {
-                currentTime = System.currentTimeMillis();
+    /**
+     * Schedules the next time an alarm with a {@link RecurrenceRule} goes off. Such an alarm has a single pending timer
+     * that is scheduled again, for the following time, every time the alarm went off. Alarms with a rule are never
+     * coalesced.
+     *
+     * @param alarm the name of the alarm
+     * @param settings the settings of the alarm
+     * @param after the local epoch second after which the alarm should go off next
+     */
+    private void scheduleRule(String alarm, AlarmRepeatSettings settings, long after) {
+        long next = settings.getRecurrenceRule().nextFireAfter(after);
+        long interval = Math.max(0, next - timeSource.localEpochSecond());
+        boolean repeat = settings.isState();
+        List<String> eventsToFire = settings.getEventsToFire();
+        saveNextFire(alarm, settings, next * 1000 + Math.max(0, settings.getMillis()));
+        Runnable runAlarm = () -> {
+            try {
+                checkAndFireEvent(alarm, settings, repeat, eventsToFire);
+            } catch (InterruptedException e) {
+                error("Unable to fire alarm: " + alarm);
+            }
+            if (repeat) {
+                rescheduleRule(alarm, settings, next);
             }
+        };
+
+        if (settings.isPrecise()) {
+            long delay = next * 1000 + settings.getMillis() - timeSource.localEpochMilli();
+            debug("Scheduling " + alarm + " - alarm will trigger " + String.join(", ", eventsToFire) + " in " + delay
+                    + " ms");
+            schedulePrecise(alarm, runAlarm, delay, 0);
+            return;
+        }
+
+        debug("Scheduling " + alarm + " - alarm will trigger " + String.join(", ", eventsToFire) + " in " + interval
+                + " seconds");
+        alarmScheduler.schedule(alarm, runAlarm, interval, 0, SECONDS);
+    }
+
+    /**
+     * Schedules the alarm for the time after the one it just went off at, unless it was changed or removed meanwhile
+     */
+    private synchronized void rescheduleRule(String alarm, AlarmRepeatSettings settings, long firedAt) {
+        if (scheduledSettingsMap.get(alarm) == settings) {
+            scheduleRule(alarm, settings, Math.max(firedAt, timeSource.localEpochSecond()));
+        }
+    }
+
+    /**
+     * Adds the alarm to the alarms that go off at the instant. The instant is scheduled when its first alarm is added.
+     */
+    private void addToInstant(String alarm, int instant, int currentSecondOfWeek) {
+        removeFromInstant(alarm);
+        instantOfAlarm.put(alarm, instant);
+        Set<String> group = alarmsByInstant.get(instant);
+        if (group == null) {
+            group = ConcurrentHashMap.newKeySet();
+            alarmsByInstant.put(instant, group);
+            scheduleInstant(instant, currentSecondOfWeek);
+        }
+        group.add(alarm);
+    }
+
+    /**
+     * Removes the alarm from the alarms of its instant. The instant is cancelled when its last alarm is removed.
+     */
+    private void removeFromInstant(String alarm) {
+        Integer instant = instantOfAlarm.remove(alarm);
+        if (instant == null) {
+            return;
+        }
+        Set<String> group = alarmsByInstant.get(instant);
+        if (group != null && group.remove(alarm) && group.isEmpty()) {
+            alarmsByInstant.remove(instant);
+            alarmScheduler.cancel(INSTANT_PREFIX + instant);
+        }
+    }
+
+    private void scheduleInstant(int instant, int currentSecondOfWeek) {
+        alarmScheduler.schedule(INSTANT_PREFIX + instant, () -> fireInstant(instant),
+                calculateWaitingTime(currentSecondOfWeek, instant), SECONDS_IN_WEEK, SECONDS);
+    }
 
-            if (!future.isCancelled()) {
-                future.cancel(true);
+    private void unscheduleAlarm(String alarm) {
+        catchUpEngine.remove(alarm);
+        cancelPrecise(alarm);
+        if (coalescing) {
+            removeFromInstant(alarm);
+        }
+        // alarms with a recurrence rule are scheduled under their own name, even when coalescing
+        alarmScheduler.cancel(alarm);
+    }
+
+    /**
+     * Handles a jump of the wall clock: if it jumped ahead (for example because the host was suspended), the alarms
+     * that missed their time meanwhile are replayed first. Then all alarms are resynced.
+     *
+     * @param jump the size of the jump in milliseconds, negative if the clock jumped back
+     */
+    private synchronized void clockJumped(long jump) {
+        if (jump > 0) {
+            catchUp(timeSource.localEpochMilli() - jump);
+        }
+        resync();
+    }
+
+    /**
+     * Reschedules the alarms that no longer go off at the right local time, after the wall clock jumped (for example
+     * because of daylight saving time, NTP or a suspended host). Alarms that are still on time are left alone, and
+     * nothing is reloaded.
+     */
+    private synchronized void resync() {
+        int currentSecondOfWeek = timeSource.secondOfWeek();
+        int rescheduled = 0;
+        if (coalescing) {
+            for (Integer instant : alarmsByInstant.keySet()) {
+                if (isOutOfSync(INSTANT_PREFIX + instant, instant, currentSecondOfWeek)) {
+                    scheduleInstant(instant, currentSecondOfWeek);
+                    rescheduled += alarmsByInstant.get(instant).size();
+                }
             }
         }
-        scheduledFutureMap.clear();
+        long localEpochSecond = timeSource.localEpochSecond();
+        for (Map.Entry<String, AlarmRepeatSettings> entry : scheduledSettingsMap.entrySet()) {
+            AlarmRepeatSettings settings = entry.getValue();
+            RecurrenceRule rule = settings.getRecurrenceRule();
+            if (settings.isPrecise()) {
+                // alarms with a millisecond are scheduled under their own name, even when coalescing
+                if (isPreciseOutOfSync(entry.getKey(), settings)) {
+                    if (rule != null) {
+                        scheduleRule(entry.getKey(), settings, localEpochSecond - 1);
+                    } else {
+                        scheduleAlarm(entry.getKey(), settings, currentSecondOfWeek);
+                    }
+                    rescheduled++;
+                }
+            } else if (rule != null) {
+                if (isOutOfSync(entry.getKey(), rule, localEpochSecond)) {
+                    scheduleRule(entry.getKey(), settings, localEpochSecond - 1);
+                    rescheduled++;
+                }
+            } else if (!coalescing) {
+                int alarmInterval = TimeSource.secondOfWeek(settings.getDay(), settings.getHours(),
+                        settings.getMinutes(), settings.getSeconds());
+                if (isOutOfSync(entry.getKey(), alarmInterval, currentSecondOfWeek)) {
+                    scheduleAlarm(entry.getKey(), settings, currentSecondOfWeek);
+                    rescheduled++;
+                }
+            }
+        }
+        debug("Resynced alarms with the wall clock, " + rescheduled + " of " + scheduledSettingsMap.size()
+                + " alarms were rescheduled");
+    }
+
+    /**
+     * Checks whether the alarm scheduled under the given name goes off more than a second away from the given second
+     * of the week
+     */
+    private boolean isOutOfSync(String scheduledName, int alarmInterval, int currentSecondOfWeek) {
+        long scheduledDelay = alarmScheduler.getDelay(scheduledName, SECONDS);
+        if (scheduledDelay < 0) {
+            return false;
+        }
+        long correctDelay = calculateWaitingTime(currentSecondOfWeek, alarmInterval);
+
+        // a second of difference is just rounding, also across the end of the week
+        long difference = Math.floorMod(scheduledDelay - correctDelay, SECONDS_IN_WEEK);
+        return difference > 1 && difference < SECONDS_IN_WEEK - 1;
+    }
+
+    /**
+     * Checks whether the alarm with the given rule goes off more than a second away from the next time of its rule
+     */
+    private boolean isOutOfSync(String alarm, RecurrenceRule rule, long localEpochSecond) {
+        long scheduledDelay = alarmScheduler.getDelay(alarm, SECONDS);
+        if (scheduledDelay < 0) {
+            return false;
+        }
+        long correctDelay = rule.nextFireAfter(localEpochSecond - 1) - localEpochSecond;
+        return Math.abs(scheduledDelay - correctDelay) > 1;
+    }
+
+    /**
+     * Checks whether the deadline of the alarm with a millisecond is more than a second away from the time the alarm
+     * should go off at next. The deadline is compared, not the time the alarm is queued for, which is a little earlier.
+     */
+    private boolean isPreciseOutOfSync(String alarm, AlarmRepeatSettings settings) {
+        DeadlineTask deadlineTask = deadlineTasks.get(alarm);
+        if (deadlineTask == null || preciseScheduler.getDelay(alarm, TimeUnit.NANOSECONDS) < 0) {
+            return false;
+        }
+        long scheduledDelay = TimeUnit.NANOSECONDS.toMillis(deadlineTask.getDeadline() - System.nanoTime());
+        long correctDelay = getPreciseDelay(settings);
+        if (settings.getRecurrenceRule() != null) {
+            return Math.abs(scheduledDelay - correctDelay) > 1000;
+        }
+
+        // a second of difference is just rounding, also across the end of the week
+        long week = SECONDS_IN_WEEK * 1000;
+        long difference = Math.floorMod(scheduledDelay - correctDelay, week);
+        return difference > 1000 && difference < week - 1000;
     }
 
     private long calculateWaitingTime(long currentInterval, long alarmInterval) {
@@ -182,6 +1198,59 @@ public class ClockActivator extends Activator implements FileSubscriber {
      * @return A list with all currently scheduled alarms, by name.
      */
     Set<String> getSchedualedAlarms() {
-        return scheduledFutureMap.keySet();
+        Set<String> alarms = new HashSet<>(preciseScheduler.getScheduledAlarms());
+        alarms.addAll(alarmTable.getNames());
+        if (coalescing) {
+            alarms.addAll(instantOfAlarm.keySet());
+            for (String scheduled : alarmScheduler.getScheduledAlarms()) {
+                if (!scheduled.startsWith(INSTANT_PREFIX)) {
+                    alarms.add(scheduled);
+                }
+            }
+        } else {
+            alarms.addAll(alarmScheduler.getScheduledAlarms());
+        }
+        return Collections.unmodifiableSet(alarms);
+    }
+
+    /**
+     * Gets the jitter of the alarms with a millisecond, meaning how far from their deadline they actually went off
+     *
+     * @return a snapshot of the jitter, in nanoseconds
+     */
+    public LatencyHistogram.Snapshot getFireJitter() {
+        return fireJitter.snapshot();
+    }
+
+    /**
+     * Gets the number of alarms with a millisecond that did not go off, because they would have been later than the
+     * late tolerance
+     *
+     * @return the number of missed deadlines
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines.get();
+    }
+
+    /**
+     * Gets the statistics of the executor the alarms run on, for example how late they fired
+     *
+     * @return the statistics of the alarm executor
+     */
+    public LoggedScheduledExecutor.Statistics getExecutorStatistics() {
+        return executorService.getStatistics();
+    }
+
+    /**
+     * Stops all threads of the activator: the {@link ClockController} of the activator writes the changes that are
+     * already queued and stops, then the alarms and the drift monitor stop. No alarm goes off afterwards.
+     */
+    void shutdown() {
+        clockController.shutdown();
+        driftMonitor.stop();
+        if (alarmScheduler instanceof TimingWheelAlarmScheduler) {
+            ((TimingWheelAlarmScheduler) alarmScheduler).shutdown();
+        }
+        executorService.shutdownNow();
     }
 }
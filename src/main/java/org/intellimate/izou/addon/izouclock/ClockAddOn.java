@@ -1,5 +1,7 @@
 package org.intellimate.izou.addon.izouclock;
 
+import org.intellimate.izou.addon.izouclock.subclasses.RingtoneClipCache;
+import org.intellimate.izou.addon.izouclock.subclasses.RingtoneManifest;
 import org.intellimate.izou.output.OutputControllerModel;
 import org.intellimate.izou.output.OutputExtensionModel;
 import org.intellimate.izou.sdk.activator.Activator;
@@ -10,10 +12,12 @@ import org.intellimate.izou.sdk.output.OutputPlugin;
 import ro.fortsoft.pf4j.Extension;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * The ClockAddOn is a time based activator that can be set in the properties files.
@@ -30,6 +34,11 @@ public class ClockAddOn extends AddOn {
      */
     public static String ADDON_DATA_PATH_LOCAL;
 
+    /**
+     * The clips of the ringtones, cut to the start point and duration set in the properties file
+     */
+    private static RingtoneClipCache ringtoneClipCache;
+
     /**
      * Creates a new ClockAddOn and registers all necessary parts.
      */
@@ -52,13 +61,48 @@ public class ClockAddOn extends AddOn {
             }
         }
         moveRingtones();
+        prepareRingtoneClips();
+    }
+
+    /**
+     * Gets the clips of the ringtones, cut to the start point and duration set in the properties file
+     *
+     * @return the ringtone clip cache, or null if the addOn is not prepared yet
+     */
+    public static RingtoneClipCache getRingtoneClipCache() {
+        return ringtoneClipCache;
     }
 
     @Override
     public Activator[] registerActivator() {
-        Activator[] activators = new Activator[1];
-        activators[0] = new ClockActivator(getContext());
-        return activators;
+        List<Activator> activators = new ArrayList<>();
+        activators.add(new ClockActivator(getContext()));
+
+        // one more activator for every clock instance, see ClockRouter
+        String instances = getContext().getPropertiesAssistant().getProperty(ClockRouter.INSTANCES_PROPERTY);
+        if (instances != null) {
+            Set<String> instanceNames = new LinkedHashSet<>();
+            for (String instanceName : instances.split(",")) {
+                instanceName = instanceName.trim();
+                if (instanceName.isEmpty() || instanceName.equals(ClockRouter.DEFAULT_INSTANCE)) {
+                    continue;
+                }
+                if (!ClockRouter.isValidName(instanceName)) {
+                    getContext().getLogger().error("Unable to create clock instance " + instanceName
+                            + ": names can only contain letters, digits, '-' and '_'");
+                    continue;
+                }
+                instanceNames.add(instanceName);
+            }
+            for (String instanceName : instanceNames) {
+                try {
+                    activators.add(new ClockActivator(getContext(), TimeSource.getDefault(), instanceName));
+                } catch (IllegalStateException e) {
+                    getContext().getLogger().error("Unable to create clock instance " + instanceName, e);
+                }
+            }
+        }
+        return activators.toArray(new Activator[activators.size()]);
     }
 
     @Override
@@ -96,7 +140,23 @@ public class ClockAddOn extends AddOn {
     }
 
     /**
-     * Moves the ringtones from the addOn into the addOn's resource folder in Izou
+     * Cuts the clips of all ringtones ahead of time, so that the first alarm does not have to wait for it
+     */
+    private void prepareRingtoneClips() {
+        ringtoneClipCache = new RingtoneClipCache(getContext(), Paths.get(ADDON_DATA_PATH_LOCAL));
+
+        Properties properties = getContext().getPropertiesAssistant().getProperties();
+        try {
+            int startPoint = Integer.parseInt(properties.getProperty("startPointAudioFile"));
+            int duration = Integer.parseInt(properties.getProperty("durationAudioFile"));
+            ringtoneClipCache.warm(Paths.get(ADDON_DATA_PATH_LOCAL), startPoint, duration);
+        } catch (NumberFormatException e) {
+            getContext().getLogger().debug("No start point or duration for the ringtones set, not preparing clips");
+        }
+    }
+
+    /**
+     * Transfers new or changed ringtones from the addOn into the addOn's resource folder in Izou
      */
     private void moveRingtones() {
         String path = getContext().getFiles().getLibLocation() +
@@ -106,14 +166,9 @@ public class ClockAddOn extends AddOn {
         try {
             File dir = new File(path);
             if (dir.isDirectory()) {
-                File[] content = dir.listFiles();
-
-                for (File file : content) {
-                    Files.move(file.toPath(), Paths.get(ADDON_DATA_PATH_LOCAL + file.getName()), StandardCopyOption.REPLACE_EXISTING,
-                            StandardCopyOption.ATOMIC_MOVE);
-                }
+                new RingtoneManifest(getContext(), Paths.get(ADDON_DATA_PATH_LOCAL)).synchronize(dir.toPath());
             }
-        } catch (NullPointerException | IOException e) {
+        } catch (NullPointerException e) {
             getContext().getLogger().error("Unable to move file", e);
         }
     }
@@ -1,6 +1,7 @@
 package org.intellimate.izou.addon.izouclock;
 
 import org.intellimate.izou.addon.izouclock.subclasses.AlarmOutput;
+import org.intellimate.izou.addon.izouclock.subclasses.RingtoneCache;
 import org.intellimate.izou.events.EventLifeCycle;
 import org.intellimate.izou.events.EventModel;
 import org.intellimate.izou.identification.Identification;
@@ -17,8 +18,6 @@ import org.intellimate.izou.sdk.resource.Resource;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.Properties;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Content Generator for IzouClock.
@@ -39,20 +38,34 @@ public class ClockContentGenerator extends ContentGenerator implements PresenceE
      */
     private final String DEFAULT_PLAYER = "org.intellimate.izou.addon.izousound.outputplugin.AudioFilePlayer";
 
+    /**
+     * The scheduler all ringing sessions run on. A session only uses it for the moment it takes to start the ringtone,
+     * so one thread is enough for any number of alarms ringing at once.
+     */
+    private final LoggedScheduledExecutor ringingScheduler;
+
+    /**
+     * The ringtone and its settings, only rebuilt when the properties change
+     */
+    private final RingtoneCache ringtoneCache;
+
     /**
      * Creates an instance of ContentGenerator
      */
     public ClockContentGenerator(Context context) {
         super(ID, context);
+        ringingScheduler = new LoggedScheduledExecutor(context, 1);
+        ringtoneCache = new RingtoneCache(context, DEFAULT_PLAYER);
     }
 
     @Override
     public List<? extends Resource> triggered(List<? extends ResourceModel> list, Optional<EventModel> optional) {
-        // Get the audio file player that should be used
-        Properties properties = getContext().getPropertiesAssistant().getProperties();
-        String audioPlayerID = properties.getProperty("audioPlayerID");
+        long triggeredNanos = System.nanoTime();
 
-        AlarmOutput alarm = new AlarmOutput(getContext(), audioPlayerID.equals(DEFAULT_PLAYER));
+        // Get the ringtone and the audio file player that should be used
+        RingtoneCache.Ringtone ringtone = ringtoneCache.getRingtone();
+        String audioPlayerID = ringtone.getAudioPlayerID();
+        AlarmOutput alarm = ringtone.getAlarmOutput();
         Optional<Identification> identification = IdentificationManager.getInstance().getIdentification(this);
 
         if (identification.isPresent()) {
@@ -61,6 +74,8 @@ public class ClockContentGenerator extends ContentGenerator implements PresenceE
                     .flatMap(target -> StartMusicRequest.createStartMusicRequest(identification.get(), target,
                             alarm.getRingtone()))
                     .ifPresent(event -> getContext().getEvents().distributor().fireEventConcurrently(event));
+            getContext().getLogger().debug("Requested the ringtone " + (System.nanoTime() - triggeredNanos) / 1000
+                    + " microseconds after the alarm was triggered");
         }
 
         EventModel<?> event;
@@ -69,7 +84,7 @@ public class ClockContentGenerator extends ContentGenerator implements PresenceE
             event.lifecycleCallback(EventLifeCycle.ENDED);
         }
 
-        actOnPresence(identification, alarm, audioPlayerID);
+        actOnPresence(identification, ringtone);
 
         // Doesnt matter what is returned, because TTS data is not generated here, so object will do
         return optionalToList(createResource(RESOURCE_ID, new Object()));
@@ -93,27 +108,17 @@ public class ClockContentGenerator extends ContentGenerator implements PresenceE
     /**
      * This method can either fire alarms until the user is present or stop firing alarms unless the user is present
      */
-    private void actOnPresence(Optional<Identification> source, AlarmOutput alarm, String audioPlayerID) {
-        Properties properties = getContext().getPropertiesAssistant().getProperties();
-        final boolean fireUntilPresent = Boolean.parseBoolean(properties.getProperty("fireUntilPresent"));
-        final boolean fireUntilAbsent = Boolean.parseBoolean(properties.getProperty("fireUntilAbsent"));
-        final boolean strictPresence = Boolean.parseBoolean(properties.getProperty("strictPresence"));
-        int soundPlayCounterTemp = 10;
-        try {
-            soundPlayCounterTemp = Integer.parseInt(properties.getProperty("soundPlayCounter"));
-        } catch (NumberFormatException e) {
-            getContext().getLogger().error("Unable to convert soundPlayCounter to an integer, setting to 10");
+    private void actOnPresence(Optional<Identification> source, RingtoneCache.Ringtone ringtone) {
+        AlarmOutput alarm = ringtone.getAlarmOutput();
+        String audioPlayerID = ringtone.getAudioPlayerID();
+        int soundPlayCounter = ringtone.getSoundPlayCounter();
+        boolean strictPresence = ringtone.isStrictPresence();
+
+        if (ringtone.isFireUntilPresent()) {
+            fireUntilPresent(source, alarm, audioPlayerID, soundPlayCounter, strictPresence);
+        } else if (ringtone.isFireUntilAbsent()) {
+            fireUntilAbsent(source, alarm, audioPlayerID, soundPlayCounter, strictPresence);
         }
-
-        final int soundPlayCounter = soundPlayCounterTemp;
-
-        getContext().getThreadPool().getThreadPool().submit(() -> {
-            if (fireUntilPresent) {
-                fireUntilPresent(source, alarm, audioPlayerID, soundPlayCounter, strictPresence);
-            } else if (fireUntilAbsent) {
-                fireUntilAbsent(source, alarm, audioPlayerID, soundPlayCounter, strictPresence);
-            }
-        });
     }
 
     /**
@@ -127,36 +132,9 @@ public class ClockContentGenerator extends ContentGenerator implements PresenceE
      */
     private void fireUntilAbsent(Optional<Identification> source, AlarmOutput alarm, String audioPlayerID,
                                  int soundPlayCounter, boolean strictPresence) {
-        AtomicBoolean present = new AtomicBoolean(true);
-        nextLeaving(strictPresence).thenAccept(presenceEvent -> {
-            if (source.isPresent()) {
-                present.set(false);
-                IdentificationManager.getInstance()
-                        .getIdentification(audioPlayerID)
-                        .flatMap(target -> StopMusic.createStopMusic(source.get(), target))
-                        .ifPresent(event -> getContext().getEvents().distributor().fireEventConcurrently(event));
-            }
-        });
-
-        int i = 0;
-        while (present.get() && i < soundPlayCounter) {
-            IdentificationManager.getInstance()
-                    .getIdentification(audioPlayerID)
-                    .flatMap(target -> StartMusicRequest.createStartMusicRequest(source.get(), target,
-                            alarm.getRingtone()))
-                    .ifPresent(event -> getContext().getEvents().distributor().fireEventConcurrently(event));
-
-            try {
-                long duration = 29000;
-                if (alarm.getRingtone().getDuration().isPresent()) {
-                    duration = alarm.getRingtone().getDuration().get();
-                }
-                Thread.sleep(duration + 1000);
-            } catch (InterruptedException e) {
-                error("Unable to sleep", e);
-            }
-            i++;
-        }
+        RingingSession session = createRingingSession(source, alarm, audioPlayerID, soundPlayCounter);
+        nextLeaving(strictPresence).thenAccept(presenceEvent -> stopRinging(session, source, audioPlayerID));
+        session.start();
     }
 
     /**
@@ -170,35 +148,50 @@ public class ClockContentGenerator extends ContentGenerator implements PresenceE
      */
     private void fireUntilPresent(Optional<Identification> source, AlarmOutput alarm, String audioPlayerID,
                                   int soundPlayCounter, boolean strictPresence) {
-        AtomicBoolean present = new AtomicBoolean(false);
-        nextPresence(strictPresence, false).thenAccept(presenceEvent -> {
-            if (source.isPresent()) {
-                present.set(true);
-                IdentificationManager.getInstance()
-                        .getIdentification(audioPlayerID)
-                        .flatMap(target -> StopMusic.createStopMusic(source.get(), target))
-                        .ifPresent(event -> getContext().getEvents().distributor().fireEventConcurrently(event));
-            }
-        });
-
-        int i = 0;
-        while (!present.get() && i < soundPlayCounter) {
+        RingingSession session = createRingingSession(source, alarm, audioPlayerID, soundPlayCounter);
+        nextPresence(strictPresence, false).thenAccept(presenceEvent -> stopRinging(session, source, audioPlayerID));
+        session.start();
+    }
+
+    /**
+     * Creates a session that plays the ringtone of the alarm up to soundPlayCounter times, with a second of silence
+     * between two rings. The session runs on the ringing scheduler, so it does not block a thread while it waits.
+     *
+     * @param source the id of the source of the event (so this id)
+     * @param alarm the output alarm that should be played
+     * @param audioPlayerID the id of the audio player that should be used to play the alarm
+     * @param soundPlayCounter the number of times the sound should be played
+     * @return the (not yet started) ringing session
+     */
+    private RingingSession createRingingSession(Optional<Identification> source, AlarmOutput alarm,
+                                                String audioPlayerID, int soundPlayCounter) {
+        long duration = 29000;
+        if (alarm.getRingtone().getDuration().isPresent()) {
+            duration = alarm.getRingtone().getDuration().get();
+        }
+
+        Runnable ring = () -> IdentificationManager.getInstance()
+                .getIdentification(audioPlayerID)
+                .flatMap(target -> StartMusicRequest.createStartMusicRequest(source.get(), target,
+                        alarm.getRingtone()))
+                .ifPresent(event -> getContext().getEvents().distributor().fireEventConcurrently(event));
+        return new RingingSession(ringingScheduler, ring, duration + 1000, soundPlayCounter);
+    }
+
+    /**
+     * Stops the ringing session and the music that is currently playing
+     *
+     * @param session the session to stop
+     * @param source the id of the source of the event (so this id)
+     * @param audioPlayerID the id of the audio player that is used to play the alarm
+     */
+    private void stopRinging(RingingSession session, Optional<Identification> source, String audioPlayerID) {
+        if (source.isPresent()) {
+            session.stop();
             IdentificationManager.getInstance()
                     .getIdentification(audioPlayerID)
-                    .flatMap(target -> StartMusicRequest.createStartMusicRequest(source.get(), target,
-                            alarm.getRingtone()))
+                    .flatMap(target -> StopMusic.createStopMusic(source.get(), target))
                     .ifPresent(event -> getContext().getEvents().distributor().fireEventConcurrently(event));
-
-            try {
-                long duration = 29000;
-                if (alarm.getRingtone().getDuration().isPresent()) {
-                    duration = alarm.getRingtone().getDuration().get();
-                }
-                Thread.sleep(duration + 1000) ;
-            } catch (InterruptedException e) {
-                error("Unable to sleep", e);
-            }
-            i++;
         }
     }
 }
@@ -1,15 +1,20 @@
 package org.intellimate.izou.addon.izouclock;
 
 import org.intellimate.izou.addon.izouclock.subclasses.AlarmActivator;
+import org.intellimate.izou.addon.izouclock.subclasses.CatchUpPolicy;
+import org.intellimate.izou.addon.izouclock.subclasses.RecurrenceRule;
 import org.intellimate.izou.sdk.Context;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
@@ -20,20 +25,22 @@ import java.util.List;
  * @version 1.0
  */
 public class ClockController {
-    private static ClockController clockController;
-
     private Context context;
     private ClockActivator clockActivator;
+    private AlarmStore alarmStore;
+    private final AtomicLong lastAlarmNumber;
+    private final AlarmWriter alarmWriter;
 
     /**
      * <p>
-     *     Get the single instance of the ClockController.
+     *     Get the ClockController of the default clock instance. Use {@link ClockRouter} to get the ClockControllers
+     *     of the other clock instances.
      * </p>
      *
-     * @return The single instance of the ClockController.
+     * @return The ClockController of the default clock instance, or null if it is not created yet.
      */
     public static ClockController getInstance() {
-        return clockController;
+        return ClockRouter.getDefault();
     }
 
     /**
@@ -43,90 +50,190 @@ public class ClockController {
      *
      * @param context The context of the addOn.
      * @param clockActivator The {@link ClockActivator} used to get access to currently loaded alarms.
+     * @param alarmStore The {@link AlarmStore} the alarms are written to.
      */
-    ClockController(Context context, ClockActivator clockActivator) {
+    ClockController(Context context, ClockActivator clockActivator, AlarmStore alarmStore) {
         this.context = context;
         this.clockActivator = clockActivator;
-        clockController = this;
+        this.alarmStore = alarmStore;
+        this.lastAlarmNumber = new AtomicLong(-1);
+        this.alarmWriter = new AlarmWriter(context, alarmStore, clockActivator::reloadNow);
+        ClockRouter.register(clockActivator.getInstanceName(), this);
+    }
+
+    /**
+     * <p>
+     *     Get the name of the clock instance whose alarms this ClockController schedules.
+     * </p>
+     *
+     * @return The name of the clock instance.
+     */
+    public String getInstanceName() {
+        return clockActivator.getInstanceName();
+    }
+
+    /**
+     * <p>
+     *     Write the changes that are already queued and stop the thread the alarms are written on.
+     * </p>
+     */
+    void shutdown() {
+        alarmWriter.shutdown();
     }
 
     /**
      * <p>
      *     Schedule an alarm that will set off a set of events. If everything was successful the alarm number is returned.
-     *     This number can be used to delete the alarm again with the unschedule method. It is an integer ranging from 1
-     *     to 999.
+     *     This number can be used to delete the alarm again with the unschedule method. It is a positive number that is
+     *     higher than the number of any alarm that was scheduled before.
      * </p>
      * <p>
      *     If the alarm was not scheduled correctly, -1 will be returned.
      * </p>
      *
-     * @param day The day the alarm should go off. The day has to be a valid day of the week (monday - sunday).
+     * @param day The day the alarm should go off. The day has to be a valid day of the week (monday - sunday) or a
+     *            recurrence rule, for example "weekdays" (see {@link RecurrenceRule}).
      * @param repeat True if the alarm should repeat, else false. If set to false, the alarm only executes once.
      * @param hour The hour of the day that the alarm should go off. An integer between 0 and 24.
      * @param minute The minute of the hour the alarm should go off. An integer between 0 and 60.
      * @param second The second of the minute the alarm should go off. An integer between 0 and 60.
      * @param events The set of events the alarm should fire when it executes.
-     * @return The alarm number (an integer between 1 and 999), or -1 if the alarm failed to be scheduled.
+     * @return The alarm number, or -1 if the alarm failed to be scheduled.
      */
-    public synchronized int scheduleAlarm(String day, boolean repeat, int hour, int minute, int second, List<String> events) {
-        // Make sure day is a valid day of the week
-        if (!day.equals("monday") && !day.equals("tuesday") && !day.equals("wednesday") && !day.equals("thursday")
-                && !day.equals("friday") && !day.equals("saturday") && !day.equals("sunday")) {
-            context.getLogger().error("Unable to schedule alarm: " + day + " is not a valid day of the week");
-            return -1;
-        }
+    public int scheduleAlarm(String day, boolean repeat, int hour, int minute, int second, List<String> events) {
+        return scheduleAlarm(new AlarmDefinition(day, repeat, hour, minute, second, events));
+    }
 
-        // Make sure hour is in between 0 and 24
-        if (hour < 0 || hour > 24) {
-            context.getLogger().error("Unable to schedule alarm: " + hour + " is not a valid hour of the day");
+    private int scheduleAlarm(AlarmDefinition alarm) {
+        long alarmNumber = scheduleAlarms(Collections.singletonList(alarm)).get(0);
+        if (alarmNumber > Integer.MAX_VALUE) {
+            context.getLogger().error("Alarm number " + alarmNumber + " does not fit into an int, use scheduleAlarms "
+                    + "to schedule it");
+            unscheduleAlarms(Collections.singletonList(alarmNumber));
             return -1;
         }
+        return (int) alarmNumber;
+    }
 
-        // Make sure minute is in between 0 and 60
-        if (minute < 0 || minute > 60) {
-            context.getLogger().error("Unable to schedule alarm: " + minute + " is not a valid minute of a hour");
-            return -1;
-        }
+    /**
+     * <p>
+     *     Schedule an alarm that goes off at a millisecond, for example to start something in several places at the
+     *     same time. The alarm is scheduled with a deadline instead of to the second, see
+     *     {@link ClockActivator#EARLY_TOLERANCE_PROPERTY} and {@link ClockActivator#LATE_TOLERANCE_PROPERTY}.
+     * </p>
+     *
+     * @param day The day the alarm should go off, like in {@link #scheduleAlarm(String, boolean, int, int, int, List)}.
+     * @param repeat True if the alarm should repeat, else false. If set to false, the alarm only executes once.
+     * @param hour The hour of the day that the alarm should go off. An integer between 0 and 24.
+     * @param minute The minute of the hour the alarm should go off. An integer between 0 and 60.
+     * @param second The second of the minute the alarm should go off. An integer between 0 and 60.
+     * @param millisecond The millisecond of the second the alarm should go off. An integer between 0 and 999.
+     * @param events The set of events the alarm should fire when it executes.
+     * @return The alarm number, or -1 if the alarm failed to be scheduled.
+     */
+    public int scheduleAlarm(String day, boolean repeat, int hour, int minute, int second, int millisecond,
+                             List<String> events) {
+        return scheduleAlarm(new AlarmDefinition(day, repeat, hour, minute, second, millisecond, events));
+    }
 
-        // Make sure second is in between 0 and 60
-        if (second < 0 || second > 60) {
-            context.getLogger().error("Unable to schedule alarm: " + second + " is not a second of a minute");
-            return -1;
-        }
+    /**
+     * <p>
+     *     Schedule an alarm with a {@link CatchUpPolicy}, which decides whether the alarm still goes off if it missed its
+     *     time, because Izou was not running or the computer was asleep. Without a policy, the alarm uses the default
+     *     policy of the clock, see {@link ClockActivator#CATCH_UP_PROPERTY}.
+     * </p>
+     *
+     * @param day The day the alarm should go off, like in {@link #scheduleAlarm(String, boolean, int, int, int, List)}.
+     * @param repeat True if the alarm should repeat, else false. If set to false, the alarm only executes once.
+     * @param hour The hour of the day that the alarm should go off. An integer between 0 and 24.
+     * @param minute The minute of the hour the alarm should go off. An integer between 0 and 60.
+     * @param second The second of the minute the alarm should go off. An integer between 0 and 60.
+     * @param millisecond The millisecond of the second the alarm should go off. An integer between 0 and 999, or -1
+     *                    if the alarm should go off to the second.
+     * @param events The set of events the alarm should fire when it executes.
+     * @param catchUpPolicy The catch-up policy of the alarm, for example {@link CatchUpPolicy#FIRE_ONCE_LATE} or
+     *                      {@code CatchUpPolicy.parse("300")}.
+     * @return The alarm number, or -1 if the alarm failed to be scheduled.
+     */
+    public int scheduleAlarm(String day, boolean repeat, int hour, int minute, int second, int millisecond,
+                             List<String> events, CatchUpPolicy catchUpPolicy) {
+        return scheduleAlarm(new AlarmDefinition(day, repeat, hour, minute, second, millisecond, events,
+                catchUpPolicy));
+    }
 
-        // Generate the alarm number
-        int alarmNumber = -1;
-        while (alarmNumber == -1 || clockActivator.getSchedualedAlarms().contains(AlarmActivator.ALARM_PREFIX + alarmNumber)) {
-            alarmNumber = (int) (Math.random() * 998) + 1;
-        }
+    /**
+     * <p>
+     *     Schedule a whole list of alarms at once. All alarms are written to the alarm store together, so this is a lot
+     *     faster than scheduling them one by one.
+     * </p>
+     * <p>
+     *     The returned list contains the alarm number of every alarm, in the same order as the given alarms. Alarms
+     *     that are not valid are not scheduled and get -1 as their number. If the alarms could not be written, all of
+     *     them get -1.
+     * </p>
+     *
+     * @param alarms The alarms to schedule.
+     * @return The alarm numbers of the alarms, or -1 for every alarm that failed to be scheduled.
+     */
+    public List<Long> scheduleAlarms(List<AlarmDefinition> alarms) {
+        return scheduleAlarms(alarms, true).join();
+    }
+
+    /**
+     * <p>
+     *     Schedule an alarm without waiting for it to be written. Alarms that are scheduled at about the same time are
+     *     written to the alarm store together.
+     * </p>
+     * <p>
+     *     The returned future completes with the alarm number once the alarm is written and scheduled, or with -1 if
+     *     the alarm failed to be scheduled.
+     * </p>
+     *
+     * @param alarm The alarm to schedule.
+     * @return A future of the alarm number.
+     */
+    public CompletableFuture<Long> scheduleAlarmAsync(AlarmDefinition alarm) {
+        return scheduleAlarms(Collections.singletonList(alarm), false).thenApply(alarmNumbers -> alarmNumbers.get(0));
+    }
+
+    /**
+     * <p>
+     *     Schedule a whole list of alarms without waiting for them to be written. The returned future completes once
+     *     all alarms are written and scheduled, with the same list {@link #scheduleAlarms(List)} returns.
+     * </p>
+     *
+     * @param alarms The alarms to schedule.
+     * @return A future of the alarm numbers of the alarms, with -1 for every alarm that failed to be scheduled.
+     */
+    public CompletableFuture<List<Long>> scheduleAlarmsAsync(List<AlarmDefinition> alarms) {
+        return scheduleAlarms(alarms, false);
+    }
 
-        // Generate the full alarm settings string
-        String alarmSettings = AlarmActivator.ALARM_PREFIX + alarmNumber + " = " + day + ";" + repeat + ";" + hour + ";"
-                + minute + ";" + second + ";" + events.stream().reduce("", (eventString, event) -> eventString += event + ";");
-        alarmSettings = alarmSettings.substring(0, alarmSettings.length() - 1);
-
-        // Write alarm settings string to file
-        try {
-            File propertiesFile = context.getPropertiesAssistant().getPropertiesFile();
-            LineNumberReader lineNumberReader = new LineNumberReader(new FileReader(propertiesFile));
-
-            // Find the line number of where to insert the alarm
-            int position = 0;
-            lineNumberReader.setLineNumber(position);
-            while (!lineNumberReader.readLine().contains("# ClockController Alarms")) {
-                position++;
+    private CompletableFuture<List<Long>> scheduleAlarms(List<AlarmDefinition> alarms, boolean immediately) {
+        List<Long> alarmNumbers = new ArrayList<>(alarms.size());
+        Map<String, String> alarmSettingsMap = new LinkedHashMap<>();
+        for (AlarmDefinition alarm : alarms) {
+            if (!isValid(alarm)) {
+                alarmNumbers.add(-1L);
+                continue;
             }
 
-            // Add the string to the properties file so that the alarm can be triggered there
-            List<String> lines = Files.readAllLines(propertiesFile.toPath(), StandardCharsets.UTF_8);
-            lines.add(position + 1, alarmSettings);
-            Files.write(propertiesFile.toPath(), lines, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            context.getLogger().error("Unable to write alarm settings string " + AlarmActivator.ALARM_PREFIX
-                    + alarmNumber + " to file");
+            long alarmNumber = nextAlarmNumber();
+            alarmNumbers.add(alarmNumber);
+            alarmSettingsMap.put(AlarmActivator.ALARM_PREFIX + alarmNumber, toSettingsString(alarm));
         }
 
-        return alarmNumber;
+        // Write all alarm settings strings to the alarm store at once
+        List<CompletableFuture<Boolean>> writes = alarmWriter.putAll(alarmSettingsMap, immediately);
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()]))
+                .handle((ignored, e) -> {
+                    if (e != null) {
+                        context.getLogger().error("Unable to write " + alarmSettingsMap.size()
+                                + " alarm settings strings to file", e);
+                        return Collections.nCopies(alarms.size(), -1L);
+                    }
+                    return alarmNumbers;
+                });
     }
 
     /**
@@ -137,29 +244,178 @@ public class ClockController {
      * @param alarmNumber The alarm number of the alarm to delete.
      * @return True if the alarm was removed successfully and otherwise false.
      */
-    public synchronized boolean unscheduleAlarm(int alarmNumber) {
-        String alarmName = AlarmActivator.ALARM_PREFIX + alarmNumber;
+    public boolean unscheduleAlarm(int alarmNumber) {
+        return unscheduleAlarms(Collections.singletonList((long) alarmNumber), true).join() > 0;
+    }
+
+    /**
+     * <p>
+     *     Deletes all alarms with the given alarm numbers from izou at once.
+     * </p>
+     *
+     * @param alarmNumbers The alarm numbers of the alarms to delete.
+     * @return The number of alarms that were removed.
+     */
+    public int unscheduleAlarms(Collection<Long> alarmNumbers) {
+        return unscheduleAlarms(alarmNumbers, true).join();
+    }
+
+    /**
+     * <p>
+     *     Deletes the alarm with the given alarm number without waiting for it to be written. The returned future
+     *     completes once the alarm is removed and cancelled.
+     * </p>
+     *
+     * @param alarmNumber The alarm number of the alarm to delete.
+     * @return A future that is true if the alarm was removed successfully and otherwise false.
+     */
+    public CompletableFuture<Boolean> unscheduleAlarmAsync(long alarmNumber) {
+        return unscheduleAlarms(Collections.singletonList(alarmNumber), false).thenApply(removed -> removed > 0);
+    }
 
-        try {
-            File propertiesFile = context.getPropertiesAssistant().getPropertiesFile();
-            LineNumberReader lineNumberReader = new LineNumberReader(new FileReader(propertiesFile));
+    /**
+     * <p>
+     *     Deletes all alarms with the given alarm numbers without waiting for them to be written. The returned future
+     *     completes once all alarms are removed and cancelled.
+     * </p>
+     *
+     * @param alarmNumbers The alarm numbers of the alarms to delete.
+     * @return A future of the number of alarms that were removed.
+     */
+    public CompletableFuture<Integer> unscheduleAlarmsAsync(Collection<Long> alarmNumbers) {
+        return unscheduleAlarms(alarmNumbers, false);
+    }
+
+    private CompletableFuture<Integer> unscheduleAlarms(Collection<Long> alarmNumbers, boolean immediately) {
+        List<String> alarmNames = new ArrayList<>(alarmNumbers.size());
+        for (long alarmNumber : alarmNumbers) {
+            alarmNames.add(AlarmActivator.ALARM_PREFIX + alarmNumber);
+        }
+
+        List<CompletableFuture<Boolean>> writes = alarmWriter.removeAll(alarmNames, immediately);
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[writes.size()]))
+                .handle((ignored, e) -> {
+                    if (e != null) {
+                        context.getLogger().error("Unable to remove " + alarmNames.size()
+                                + " alarm settings strings from file", e);
+                        return 0;
+                    }
+                    int removed = 0;
+                    for (CompletableFuture<Boolean> write : writes) {
+                        if (write.join()) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                });
+    }
 
-            // Find the line number of the alarm to remove
-            int position = 0;
-            lineNumberReader.setLineNumber(position);
-            while (!lineNumberReader.readLine().contains(alarmName)) {
-                position++;
+    private boolean isValid(AlarmDefinition alarm) {
+        // Make sure day is a valid day of the week or a valid recurrence rule
+        String day = alarm.getDay();
+        if (day == null) {
+            context.getLogger().error("Unable to schedule alarm: the day is missing");
+            return false;
+        }
+        if (!RecurrenceRule.isSingleDay(day)) {
+            try {
+                RecurrenceRule.compile(day, alarm.getHour(), alarm.getMinute(), alarm.getSecond());
+            } catch (IllegalStateException e) {
+                context.getLogger().error("Unable to schedule alarm: " + day
+                        + " is not a valid day of the week or recurrence rule");
+                return false;
             }
+        }
 
-            // Remove the alarm
-            List<String> lines = Files.readAllLines(propertiesFile.toPath(), StandardCharsets.UTF_8);
-            lines.remove(position);
-            Files.write(propertiesFile.toPath(), lines, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            context.getLogger().error("Unable to remove alarm settings string " + alarmName + " from file");
+        // Make sure hour is in between 0 and 24
+        if (alarm.getHour() < 0 || alarm.getHour() > 24) {
+            context.getLogger().error("Unable to schedule alarm: " + alarm.getHour() + " is not a valid hour of the day");
+            return false;
+        }
+
+        // Make sure minute is in between 0 and 60
+        if (alarm.getMinute() < 0 || alarm.getMinute() > 60) {
+            context.getLogger().error("Unable to schedule alarm: " + alarm.getMinute() + " is not a valid minute of a hour");
+            return false;
+        }
+
+        // Make sure second is in between 0 and 60
+        if (alarm.getSecond() < 0 || alarm.getSecond() > 60) {
+            context.getLogger().error("Unable to schedule alarm: " + alarm.getSecond() + " is not a second of a minute");
             return false;
         }
 
+        // Make sure millisecond is in between 0 and 999, if there is one
+        if (alarm.getMillisecond() < -1 || alarm.getMillisecond() > 999) {
+            context.getLogger().error("Unable to schedule alarm: " + alarm.getMillisecond()
+                    + " is not a millisecond of a second");
+            return false;
+        }
+
+        // Make sure the catch-up policy is not hidden in the events, where it would not be checked
+        for (String event : alarm.getEvents()) {
+            if (event.startsWith(CatchUpPolicy.SETTINGS_PREFIX)) {
+                context.getLogger().error("Unable to schedule alarm: " + event + " is not an event, the catch-up "
+                        + "policy has to be passed as CatchUpPolicy");
+                return false;
+            }
+        }
         return true;
     }
+
+    /**
+     * Generates the full alarm settings string of the alarm
+     */
+    private String toSettingsString(AlarmDefinition alarm) {
+        StringBuilder alarmSettings = new StringBuilder();
+        alarmSettings.append(alarm.getDay()).append(';').append(alarm.isRepeat()).append(';').append(alarm.getHour())
+                .append(';').append(alarm.getMinute()).append(';').append(alarm.getSecond());
+        int millisecond = alarm.getMillisecond();
+        if (millisecond >= 0) {
+            alarmSettings.append(millisecond < 10 ? ".00" : millisecond < 100 ? ".0" : ".").append(millisecond);
+        }
+        for (String event : alarm.getEvents()) {
+            alarmSettings.append(';').append(event);
+        }
+        if (alarm.getCatchUpPolicy() != null) {
+            alarmSettings.append(';').append(CatchUpPolicy.SETTINGS_PREFIX).append(alarm.getCatchUpPolicy());
+        }
+        return alarmSettings.toString();
+    }
+
+    /**
+     * Gets the next free alarm number. The first time, the numbers continue after the highest alarm number that is
+     * already in use.
+     */
+    private long nextAlarmNumber() {
+        if (lastAlarmNumber.get() < 0) {
+            synchronized (lastAlarmNumber) {
+                if (lastAlarmNumber.get() < 0) {
+                    lastAlarmNumber.set(findHighestAlarmNumber());
+                }
+            }
+        }
+        return lastAlarmNumber.incrementAndGet();
+    }
+
+    private long findHighestAlarmNumber() {
+        Set<String> alarmNames = new HashSet<>(context.getPropertiesAssistant().getProperties().stringPropertyNames());
+        alarmNames.addAll(alarmStore.getAlarms().keySet());
+        alarmNames.addAll(clockActivator.getSchedualedAlarms());
+
+        long highest = 0;
+        for (String alarmName : alarmNames) {
+            int prefix = alarmName.indexOf(AlarmActivator.ALARM_PREFIX);
+            if (prefix < 0) {
+                continue;
+            }
+            try {
+                highest = Math.max(highest,
+                        Long.parseLong(alarmName.substring(prefix + AlarmActivator.ALARM_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                // not a numbered alarm, so it can not collide with the generated numbers
+            }
+        }
+        return highest;
+    }
 }
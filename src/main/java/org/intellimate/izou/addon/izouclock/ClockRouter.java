@@ -0,0 +1,84 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ *     The ClockRouter finds the {@link ClockController} of a clock instance by its name. Every clock instance (for
+ *     example one per user or per room) has its own alarms, alarm store and threads, so a busy or slow instance never
+ *     delays the alarms of the others.
+ * </p>
+ * <p>
+ *     The default instance contains the alarms of the properties file and always exists. More instances are listed in
+ *     the property {@value #INSTANCES_PROPERTY}, separated by commas, and are created when the addOn starts.
+ * </p>
+ */
+public class ClockRouter {
+    /**
+     * The name of the default clock instance
+     */
+    public static final String DEFAULT_INSTANCE = "default";
+
+    /**
+     * The name of the property that lists the names of the clock instances next to the default instance
+     */
+    public static final String INSTANCES_PROPERTY = "clockInstances";
+
+    private static final ConcurrentHashMap<String, ClockController> controllers = new ConcurrentHashMap<>();
+
+    private ClockRouter() {
+    }
+
+    /**
+     * Registers the ClockController of a clock instance, replacing the one that was registered under the same name
+     *
+     * @param instanceName the name of the clock instance
+     * @param clockController the ClockController of the instance
+     */
+    static void register(String instanceName, ClockController clockController) {
+        controllers.put(instanceName, clockController);
+    }
+
+    /**
+     * Checks whether a name can be used for a clock instance. Names can only contain letters, digits, '-' and '_',
+     * because they are part of the file name of the alarm log of the instance.
+     *
+     * @param instanceName the name to check
+     * @return true if the name can be used, else false
+     */
+    public static boolean isValidName(String instanceName) {
+        return instanceName != null && instanceName.matches("[A-Za-z0-9_-]+");
+    }
+
+    /**
+     * Gets the ClockController of the default clock instance
+     *
+     * @return the ClockController of the default instance, or null if it is not created yet
+     */
+    public static ClockController getDefault() {
+        return controllers.get(DEFAULT_INSTANCE);
+    }
+
+    /**
+     * Gets the ClockController of a clock instance
+     *
+     * @param instanceName the name of the clock instance
+     * @return the ClockController of the instance, or an empty Optional if there is no instance with that name
+     */
+    public static Optional<ClockController> get(String instanceName) {
+        return Optional.ofNullable(controllers.get(instanceName));
+    }
+
+    /**
+     * Gets the names of all clock instances
+     *
+     * @return the names of all clock instances, sorted
+     */
+    public static Set<String> getInstanceNames() {
+        return Collections.unmodifiableSet(new TreeSet<>(controllers.keySet()));
+    }
+}
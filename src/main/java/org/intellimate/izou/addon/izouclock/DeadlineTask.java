@@ -0,0 +1,115 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A DeadlineTask runs an alarm at a deadline on {@link System#nanoTime()}, with a precision of well below a
+ * millisecond. It is meant to be scheduled a little before its deadline: when it runs, it waits for the rest of the
+ * time itself, by parking the thread and spinning for the last few microseconds.
+ * <p>
+ * If the task runs less than the early tolerance before its deadline, the alarm goes off right away. If it runs more
+ * than the late tolerance after its deadline, the alarm does not go off at all, because it missed its time. The
+ * difference between the deadline and the time the alarm actually went off is recorded as jitter.
+ * </p>
+ * <p>
+ * A task that repeats moves its deadline on by the period after every run, so it stays on time as long as it is
+ * scheduled at a fixed rate with the same period.
+ * </p>
+ */
+class DeadlineTask implements Runnable {
+    /**
+     * Below this, the thread spins instead of parking, because parking can overshoot by about this much
+     */
+    private static final long SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Context context;
+    private final String alarmName;
+    private final Runnable alarm;
+    private final long period;
+    private final long earlyTolerance;
+    private final long lateTolerance;
+    private final LatencyHistogram jitter;
+    private final AtomicLong missedDeadlines;
+    private volatile long deadline;
+
+    /**
+     * Creates a new DeadlineTask
+     *
+     * @param context the context of the addOn
+     * @param alarmName the name of the alarm
+     * @param alarm the alarm to run at the deadline
+     * @param deadline the deadline, on {@link System#nanoTime()}
+     * @param period the time between two deadlines in nanoseconds, or 0 if the task runs only once
+     * @param earlyTolerance how early the alarm may go off, in nanoseconds
+     * @param lateTolerance how late the alarm may go off, in nanoseconds
+     * @param jitter the histogram the jitter is recorded into
+     * @param missedDeadlines counts the alarms that did not go off because they were too late
+     */
+    DeadlineTask(Context context, String alarmName, Runnable alarm, long deadline, long period, long earlyTolerance,
+                 long lateTolerance, LatencyHistogram jitter, AtomicLong missedDeadlines) {
+        this.context = context;
+        this.alarmName = alarmName;
+        this.alarm = alarm;
+        this.deadline = deadline;
+        this.period = period;
+        this.earlyTolerance = earlyTolerance;
+        this.lateTolerance = lateTolerance;
+        this.jitter = jitter;
+        this.missedDeadlines = missedDeadlines;
+    }
+
+    @Override
+    public void run() {
+        long currentDeadline = deadline;
+        if (period > 0) {
+            deadline = currentDeadline + period;
+        }
+
+        long now = System.nanoTime();
+        if (currentDeadline - now > earlyTolerance) {
+            now = awaitDeadline(currentDeadline);
+        }
+
+        long lateness = now - currentDeadline;
+        if (lateness > lateTolerance) {
+            missedDeadlines.incrementAndGet();
+            context.getLogger().warn("Alarm " + alarmName + " missed its deadline by "
+                    + TimeUnit.NANOSECONDS.toMillis(lateness) + " ms and did not go off");
+            return;
+        }
+        jitter.record(Math.abs(lateness));
+        alarm.run();
+    }
+
+    /**
+     * Gets the next deadline of the task
+     *
+     * @return the deadline, on {@link System#nanoTime()}
+     */
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Waits until the deadline
+     *
+     * @return the time the wait ended, on {@link System#nanoTime()}
+     */
+    private static long awaitDeadline(long deadline) {
+        long now = System.nanoTime();
+        while (deadline - now > 0) {
+            long remaining = deadline - now;
+            if (remaining > SPIN_THRESHOLD) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD);
+            } else {
+                Thread.yield();
+            }
+            now = System.nanoTime();
+        }
+        return now;
+    }
+}
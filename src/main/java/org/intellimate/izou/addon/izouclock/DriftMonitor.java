@@ -0,0 +1,110 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * The DriftMonitor watches the local wall clock for jumps. Alarms are scheduled on {@link System#nanoTime()}, which
+ * keeps running steadily when the wall clock is set (for example by NTP), when the time zone changes its UTC offset
+ * (daylight saving time) and, on most systems, stands still while the host is suspended. In all these cases the
+ * scheduled alarms no longer match the local time they were set for.
+ * <p>
+ * Every few seconds the monitor compares how far the local wall clock moved with how far {@link System#nanoTime()}
+ * moved. If they differ by more than a second, the listener is told about the jump, so the alarms can be resynced.
+ * </p>
+ */
+public class DriftMonitor {
+    /**
+     * The time between two checks, in seconds
+     */
+    private static final long CHECK_INTERVAL = 5;
+
+    /**
+     * The difference between the wall clock and the monotonic clock that counts as a jump, in milliseconds
+     */
+    private static final long TOLERANCE = 1000;
+
+    private final Context context;
+    private final TimeSource timeSource;
+    private final ScheduledExecutorService executor;
+    private final LongConsumer jumpListener;
+    private ScheduledFuture<?> checkFuture;
+    private long lastNanos;
+    private long lastLocalMillis;
+    private int lastOffset;
+
+    /**
+     * Creates a new DriftMonitor
+     *
+     * @param context the context of the addOn
+     * @param timeSource the source of the local wall clock time
+     * @param executor the executor the checks run on
+     * @param jumpListener the listener that is called with the size of the jump (in milliseconds, negative if the
+     *                     clock jumped back) every time the local wall clock jumped
+     */
+    public DriftMonitor(Context context, TimeSource timeSource, ScheduledExecutorService executor,
+                        LongConsumer jumpListener) {
+        this.context = context;
+        this.timeSource = timeSource;
+        this.executor = executor;
+        this.jumpListener = jumpListener;
+    }
+
+    /**
+     * Starts checking the wall clock. Does nothing if the monitor is already running.
+     */
+    public synchronized void start() {
+        if (checkFuture != null) {
+            return;
+        }
+        lastNanos = System.nanoTime();
+        lastLocalMillis = timeSource.localEpochMilli();
+        lastOffset = timeSource.offsetSeconds();
+        checkFuture = executor.scheduleAtFixedRate(this::check, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops checking the wall clock
+     */
+    public synchronized void stop() {
+        if (checkFuture != null) {
+            checkFuture.cancel(false);
+            checkFuture = null;
+        }
+    }
+
+    /**
+     * Compares the progress of the local wall clock with the progress of the monotonic clock since the last check
+     */
+    synchronized void check() {
+        long nanos = System.nanoTime();
+        long localMillis = timeSource.localEpochMilli();
+        int offset = timeSource.offsetSeconds();
+
+        long expectedLocalMillis = lastLocalMillis + TimeUnit.NANOSECONDS.toMillis(nanos - lastNanos);
+        long jump = localMillis - expectedLocalMillis;
+        int offsetChange = offset - lastOffset;
+        lastNanos = nanos;
+        lastLocalMillis = localMillis;
+        lastOffset = offset;
+
+        if (Math.abs(jump) < TOLERANCE) {
+            return;
+        }
+
+        if (offsetChange != 0) {
+            context.getLogger().debug("The UTC offset changed by " + offsetChange + " seconds, resyncing alarms");
+        } else {
+            context.getLogger().debug("The wall clock jumped by " + jump + " ms, resyncing alarms");
+        }
+        try {
+            jumpListener.accept(jump);
+        } catch (RuntimeException e) {
+            context.getLogger().error("Unable to resync alarms", e);
+        }
+    }
+}
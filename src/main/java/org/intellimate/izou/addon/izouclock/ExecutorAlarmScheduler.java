@@ -0,0 +1,69 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AlarmScheduler} that schedules every alarm as its own future on a {@link LoggedScheduledExecutor}. The
+ * futures are kept in a concurrent map, so alarms can be scheduled and cancelled from any thread.
+ */
+public class ExecutorAlarmScheduler implements AlarmScheduler {
+    private LoggedScheduledExecutor executorService;
+    private ConcurrentHashMap<String, ScheduledFuture<?>> scheduledFutureMap;
+
+    /**
+     * Creates a new ExecutorAlarmScheduler
+     *
+     * @param executorService the executor on which the alarms are scheduled
+     */
+    public ExecutorAlarmScheduler(LoggedScheduledExecutor executorService) {
+        this.executorService = executorService;
+        scheduledFutureMap = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void schedule(String alarmName, Runnable alarm, long initialDelay, long period, TimeUnit unit) {
+        ScheduledFuture<?> alarmHandler;
+        if (period > 0) {
+            alarmHandler = executorService.scheduleAtFixedRate(alarm, initialDelay, period, unit);
+        } else {
+            alarmHandler = executorService.schedule(alarm, initialDelay, unit);
+        }
+
+        // replacing the future and cancelling the old one afterwards never leaves two futures for the same alarm
+        ScheduledFuture<?> previous = scheduledFutureMap.put(alarmName, alarmHandler);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    @Override
+    public boolean cancel(String alarmName) {
+        ScheduledFuture<?> future = scheduledFutureMap.remove(alarmName);
+        return future != null && future.cancel(false);
+    }
+
+    @Override
+    public long getDelay(String alarmName, TimeUnit unit) {
+        ScheduledFuture<?> future = scheduledFutureMap.get(alarmName);
+        if (future == null || future.isDone()) {
+            return -1;
+        }
+        return Math.max(0, future.getDelay(unit));
+    }
+
+    @Override
+    public void cancelAll() {
+        // cancel(false) never blocks: an alarm that is running right now finishes, but will not run again
+        for (String alarmName : scheduledFutureMap.keySet()) {
+            cancel(alarmName);
+        }
+    }
+
+    @Override
+    public Set<String> getScheduledAlarms() {
+        return scheduledFutureMap.keySet();
+    }
+}
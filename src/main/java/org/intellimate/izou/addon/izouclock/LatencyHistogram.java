@@ -0,0 +1,162 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets in the style of HdrHistogram: every power of two is split
+ * into 64 linear sub-buckets, so every recorded value is kept with a precision of about 1.5%.
+ * <p>
+ * Recording only increments atomic counters. It takes no locks and creates no objects, so it can be done on every
+ * execution of a task. Reading is done by taking a {@link Snapshot}.
+ * </p>
+ */
+public class LatencyHistogram {
+    /**
+     * Values below this are counted exactly, every value above falls into one of 64 sub-buckets of its power of two
+     */
+    private static final int LINEAR_BUCKETS = 128;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * Creates a new, empty LatencyHistogram
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a duration. Negative durations are recorded as 0.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        sum.addAndGet(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Takes a snapshot of all values recorded so far. Values that are recorded while the snapshot is taken may or may
+     * not be part of it.
+     *
+     * @return a snapshot of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] snapshotCounts = new long[BUCKETS];
+        long snapshotCount = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshotCounts[i] = counts.get(i);
+            snapshotCount += snapshotCounts[i];
+        }
+        return new Snapshot(snapshotCounts, snapshotCount, sum.get(), max.get());
+    }
+
+    private static int bucketOf(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the highest value that falls into the bucket
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * The values of a {@link LatencyHistogram} at a point in time
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of recorded values
+         *
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the highest recorded value
+         *
+         * @return the highest recorded value in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the mean of the recorded values
+         *
+         * @return the mean in nanoseconds, or 0 if nothing was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets the value that the given percentage of all recorded values are lower than or equal to
+         *
+         * @param percentile the percentile, for example 99.9
+         * @return the value at the percentile in nanoseconds, or 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + ", mean=" + (long) getMean() / 1000 + "us"
+                    + ", p50=" + getValueAtPercentile(50) / 1000 + "us"
+                    + ", p99=" + getValueAtPercentile(99) / 1000 + "us"
+                    + ", p999=" + getValueAtPercentile(99.9) / 1000 + "us"
+                    + ", max=" + max / 1000 + "us";
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * An {@link AlarmStore} backed by an append-only log file. Every change is one small record that is appended to the
+ * log, so scheduling or removing an alarm never rewrites the whole file.
+ * <p>
+ * Changes from concurrent callers are group committed: whichever caller gets to write first writes all pending records
+ * at once and syncs the file a single time for all of them. A call only returns after its record is synced to disk.
+ * </p>
+ * <p>
+ * Every record carries a CRC32 checksum. If the addOn stops in the middle of a write, the broken tail of the log is
+ * detected and cut off the next time the log is opened. Once the log contains a lot more records than alarms, it is
+ * compacted into a fresh log that only contains the current alarms.
+ * </p>
+ */
+public class LogAlarmStore implements AlarmStore {
+    private static final char PUT = 'P';
+    private static final char REMOVE = 'R';
+    private static final int COMPACTION_THRESHOLD = 1024;
+
+    private final Context context;
+    private final Path logFile;
+    private final LinkedHashMap<String, String> alarms;
+    private final Object commitLock = new Object();
+    private final Object pendingLock = new Object();
+    private List<Record> pending;
+    private FileChannel channel;
+    private int recordCount;
+    private Runnable changeListener;
+
+    /**
+     * Creates a new LogAlarmStore and recovers all alarms from the log file, if it exists
+     *
+     * @param context the context of the addOn
+     * @param logFile the path of the log file
+     * @throws IOException if the log file could not be opened or read
+     */
+    public LogAlarmStore(Context context, Path logFile) throws IOException {
+        this.context = context;
+        this.logFile = logFile;
+        this.alarms = new LinkedHashMap<>();
+        this.pending = new ArrayList<>();
+        recover();
+        channel = openLog();
+    }
+
+    /**
+     * Sets a listener that is run every time a change was committed to the log
+     *
+     * @param changeListener the listener to run after a commit
+     */
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    @Override
+    public void put(String alarmName, String alarmSettings) throws IOException {
+        append(Collections.singletonList(new Record(PUT, alarmName, alarmSettings)));
+    }
+
+    @Override
+    public void putAll(Map<String, String> alarms) throws IOException {
+        List<Record> records = new ArrayList<>(alarms.size());
+        for (Map.Entry<String, String> alarm : alarms.entrySet()) {
+            records.add(new Record(PUT, alarm.getKey(), alarm.getValue()));
+        }
+        append(records);
+    }
+
+    @Override
+    public boolean remove(String alarmName) throws IOException {
+        return !removeAll(Collections.singleton(alarmName)).isEmpty();
+    }
+
+    @Override
+    public Set<String> removeAll(Collection<String> alarmNames) throws IOException {
+        Set<String> removed = new HashSet<>();
+        List<Record> records = new ArrayList<>();
+        synchronized (commitLock) {
+            for (String alarmName : alarmNames) {
+                if (alarms.containsKey(alarmName) && removed.add(alarmName)) {
+                    records.add(new Record(REMOVE, alarmName, null));
+                }
+            }
+        }
+        append(records);
+        return removed;
+    }
+
+    @Override
+    public Map<String, String> getAlarms() {
+        synchronized (commitLock) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(alarms));
+        }
+    }
+
+    /**
+     * Adds the records to the pending records and waits until they are committed, either by this thread or by another
+     * thread that committed them together with its own records. The records are added at once, so they always end up
+     * in the same batch.
+     */
+    private void append(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (Record record : records) {
+            if (record.alarmName.indexOf('\t') >= 0 || record.alarmName.indexOf('\n') >= 0
+                    || (record.alarmSettings != null && (record.alarmSettings.indexOf('\t') >= 0
+                    || record.alarmSettings.indexOf('\n') >= 0))) {
+                throw new IOException("Alarm names and settings must not contain tabs or line breaks");
+            }
+        }
+
+        synchronized (pendingLock) {
+            pending.addAll(records);
+        }
+
+        Record record = records.get(0);
+        synchronized (commitLock) {
+            if (!record.committed) {
+                List<Record> batch;
+                synchronized (pendingLock) {
+                    batch = pending;
+                    pending = new ArrayList<>();
+                }
+                commit(batch);
+            }
+        }
+
+        if (record.error != null) {
+            throw record.error;
+        }
+
+        Runnable listener = changeListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Writes a batch of records with a single write and a single sync
+     */
+    private void commit(List<Record> batch) {
+        StringBuilder builder = new StringBuilder();
+        for (Record record : batch) {
+            builder.append(record.encode());
+        }
+
+        long validSize = -1;
+        try {
+            validSize = channel.size();
+            ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+
+            for (Record record : batch) {
+                apply(record);
+            }
+            recordCount += batch.size();
+        } catch (IOException e) {
+            context.getLogger().error("Unable to write " + batch.size() + " alarm records to " + logFile, e);
+            discardTornBatch(validSize);
+            for (Record record : batch) {
+                record.error = e;
+            }
+        } finally {
+            for (Record record : batch) {
+                record.committed = true;
+            }
+        }
+
+        if (recordCount > COMPACTION_THRESHOLD && recordCount > 2 * alarms.size()) {
+            try {
+                compact();
+            } catch (IOException e) {
+                context.getLogger().error("Unable to compact the alarm log " + logFile, e);
+            }
+        }
+    }
+
+    /**
+     * Cuts off whatever part of a failed batch already reached the log. Otherwise the next batches would be appended
+     * after a broken record, and would be discarded together with it when the log is recovered.
+     *
+     * @param validSize the size of the log before the batch was written, or -1 if it is not known
+     */
+    private void discardTornBatch(long validSize) {
+        if (validSize < 0) {
+            return;
+        }
+        try {
+            if (channel.size() > validSize) {
+                channel.truncate(validSize);
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            context.getLogger().error("Unable to cut off the failed alarm records of " + logFile, e);
+        }
+    }
+
+    /**
+     * Replaces the log with a new log that contains exactly one record per current alarm
+     */
+    private void compact() throws IOException {
+        Path compactFile = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> alarm : alarms.entrySet()) {
+            builder.append(new Record(PUT, alarm.getKey(), alarm.getValue()).encode());
+        }
+
+        // the new log is appended to through the channel it was written with, so the old channel is only closed once
+        // the new log has replaced it, and stays in use if anything goes wrong before
+        Files.deleteIfExists(compactFile);
+        FileChannel compactChannel = FileChannel.open(compactFile, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                compactChannel.write(buffer);
+            }
+            compactChannel.force(true);
+            Files.move(compactFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            compactChannel.close();
+            throw e;
+        }
+
+        FileChannel oldChannel = channel;
+        channel = compactChannel;
+        try {
+            oldChannel.close();
+        } catch (IOException e) {
+            context.getLogger().warn("Unable to close the old alarm log " + logFile, e);
+        }
+        recordCount = alarms.size();
+        context.getLogger().debug("Compacted alarm log to " + recordCount + " records");
+    }
+
+    /**
+     * Reads all valid records from the log file. Everything after the first broken record (a record that was only
+     * partly written, or whose checksum does not match) is cut off.
+     */
+    private void recover() throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+
+        byte[] content = Files.readAllBytes(logFile);
+        int validLength = 0;
+        int start = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            Record record = Record.decode(new String(content, start, i - start, StandardCharsets.UTF_8));
+            if (record == null) {
+                break;
+            }
+            apply(record);
+            recordCount++;
+            start = i + 1;
+            validLength = start;
+        }
+
+        if (validLength < content.length) {
+            context.getLogger().warn("Alarm log " + logFile + " has a broken tail, discarding the last "
+                    + (content.length - validLength) + " bytes");
+            try (FileChannel truncateChannel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                truncateChannel.truncate(validLength);
+                truncateChannel.force(true);
+            }
+        }
+    }
+
+    private void apply(Record record) {
+        if (record.type == PUT) {
+            alarms.put(record.alarmName, record.alarmSettings);
+        } else {
+            alarms.remove(record.alarmName);
+        }
+    }
+
+    private FileChannel openLog() throws IOException {
+        return FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * One line in the log: checksum, type, alarm name and (for puts) the alarm settings, separated by tabs
+     */
+    private static class Record {
+        private final char type;
+        private final String alarmName;
+        private final String alarmSettings;
+        private volatile boolean committed;
+        private volatile IOException error;
+
+        Record(char type, String alarmName, String alarmSettings) {
+            this.type = type;
+            this.alarmName = alarmName;
+            this.alarmSettings = alarmSettings;
+        }
+
+        String encode() {
+            String body = type == PUT ? type + "\t" + alarmName + "\t" + alarmSettings : type + "\t" + alarmName;
+            return checksum(body) + "\t" + body + "\n";
+        }
+
+        static Record decode(String line) {
+            int separator = line.indexOf('\t');
+            if (separator < 0) {
+                return null;
+            }
+            String body = line.substring(separator + 1);
+            if (!line.substring(0, separator).equals(checksum(body))) {
+                return null;
+            }
+
+            String[] parts = body.split("\t", -1);
+            if (parts.length == 3 && parts[0].equals(String.valueOf(PUT))) {
+                return new Record(PUT, parts[1], parts[2]);
+            } else if (parts.length == 2 && parts[0].equals(String.valueOf(REMOVE))) {
+                return new Record(REMOVE, parts[1], null);
+            }
+            return null;
+        }
+
+        private static String checksum(String body) {
+            CRC32 crc = new CRC32();
+            crc.update(body.getBytes(StandardCharsets.UTF_8));
+            return Long.toHexString(crc.getValue());
+        }
+    }
+}
@@ -2,15 +2,27 @@ package org.intellimate.izou.addon.izouclock;
 
 import org.intellimate.izou.sdk.Context;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * A ScheduledThreadPoolExecutor that logs exceptions and does not just drop them
+ * A ScheduledThreadPoolExecutor that logs exceptions and does not just drop them.
+ * <p>
+ * It also measures every task it runs: how late the task started compared with the time it was scheduled for (the
+ * fire lag) and how long it ran. Both are recorded in a {@link LatencyHistogram} and can be read together with the
+ * queue depth and the number of active threads through {@link #getStatistics()}.
+ * </p>
  */
 public class LoggedScheduledExecutor extends ScheduledThreadPoolExecutor {
     private Context context;
+    private final LatencyHistogram fireLag;
+    private final LatencyHistogram executionTime;
 
     /**
      * Creates a new LoggedScheduledExecutor object
@@ -22,6 +34,28 @@ public class LoggedScheduledExecutor extends ScheduledThreadPoolExecutor {
     public LoggedScheduledExecutor(Context context, int corePoolSize) {
         super(corePoolSize);
         this.context = context;
+        this.fireLag = new LatencyHistogram();
+        this.executionTime = new LatencyHistogram();
+    }
+
+    /**
+     * Gets the current statistics of the executor
+     *
+     * @return the current statistics of the executor
+     */
+    public Statistics getStatistics() {
+        return new Statistics(fireLag.snapshot(), executionTime.snapshot(), getQueue().size(), getActiveCount(),
+                getCompletedTaskCount());
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+        return new MeasuredTask<>(task);
+    }
+
+    @Override
+    protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
+        return new MeasuredTask<>(task);
     }
 
     @Override
@@ -60,4 +94,143 @@ public class LoggedScheduledExecutor extends ScheduledThreadPoolExecutor {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Records the fire lag and the execution time of a task. A periodic task is put back into the queue as this
+     * object, so it is only created once per scheduled task and not on every execution.
+     */
+    private class MeasuredTask<V> implements RunnableScheduledFuture<V> {
+        private final RunnableScheduledFuture<V> task;
+
+        MeasuredTask(RunnableScheduledFuture<V> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            // the delay of a task that is due is 0 or negative, it is exactly how late the task is
+            fireLag.record(-task.getDelay(TimeUnit.NANOSECONDS));
+            long start = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                executionTime.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return task.isPeriodic();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return task.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return task.compareTo(other);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = task.cancel(mayInterruptIfRunning);
+            if (cancelled && getRemoveOnCancelPolicy()) {
+                remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return task.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return task.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return task.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return task.get(timeout, unit);
+        }
+    }
+
+    /**
+     * The statistics of a {@link LoggedScheduledExecutor} at a point in time
+     */
+    public static class Statistics {
+        private final LatencyHistogram.Snapshot fireLag;
+        private final LatencyHistogram.Snapshot executionTime;
+        private final int queueDepth;
+        private final int activeCount;
+        private final long completedTaskCount;
+
+        private Statistics(LatencyHistogram.Snapshot fireLag, LatencyHistogram.Snapshot executionTime, int queueDepth,
+                           int activeCount, long completedTaskCount) {
+            this.fireLag = fireLag;
+            this.executionTime = executionTime;
+            this.queueDepth = queueDepth;
+            this.activeCount = activeCount;
+            this.completedTaskCount = completedTaskCount;
+        }
+
+        /**
+         * Gets how late the tasks started compared with the time they were scheduled for
+         *
+         * @return the fire lag of the tasks
+         */
+        public LatencyHistogram.Snapshot getFireLag() {
+            return fireLag;
+        }
+
+        /**
+         * Gets how long the tasks ran
+         *
+         * @return the execution time of the tasks
+         */
+        public LatencyHistogram.Snapshot getExecutionTime() {
+            return executionTime;
+        }
+
+        /**
+         * Gets the number of tasks that are waiting in the queue
+         *
+         * @return the number of tasks in the queue
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * Gets the number of threads that are running a task
+         *
+         * @return the number of active threads
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /**
+         * Gets the approximate number of tasks that have completed
+         *
+         * @return the number of completed tasks
+         */
+        public long getCompletedTaskCount() {
+            return completedTaskCount;
+        }
+
+        @Override
+        public String toString() {
+            return "fire lag [" + fireLag + "], execution time [" + executionTime + "], queue depth " + queueDepth
+                    + ", active threads " + activeCount + ", completed tasks " + completedTaskCount;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An {@link AlarmStore} that writes the alarms right into the properties file of the addOn, below the
+ * "# ClockController Alarms" line. The properties file is rewritten with every change, so alarms that are added or
+ * removed together should be passed to {@link #putAll(Map)} and {@link #removeAll(Collection)}, which rewrite it only
+ * once.
+ */
+public class PropertiesAlarmStore implements AlarmStore {
+    private static final String ALARM_SECTION = "# ClockController Alarms";
+    private Context context;
+
+    /**
+     * Creates a new PropertiesAlarmStore
+     *
+     * @param context the context of the addOn
+     */
+    public PropertiesAlarmStore(Context context) {
+        this.context = context;
+    }
+
+    @Override
+    public void put(String alarmName, String alarmSettings) throws IOException {
+        putAll(Collections.singletonMap(alarmName, alarmSettings));
+    }
+
+    @Override
+    public void putAll(Map<String, String> alarms) throws IOException {
+        File propertiesFile = context.getPropertiesAssistant().getPropertiesFile();
+        List<String> lines = Files.readAllLines(propertiesFile.toPath(), StandardCharsets.UTF_8);
+
+        // Alarms with the same name as an existing alarm replace it
+        lines.removeIf(line -> {
+            String alarmName = getAlarmName(line);
+            return alarmName != null && alarms.containsKey(alarmName);
+        });
+
+        // Find the line number of where to insert the alarms
+        int position = 0;
+        while (position < lines.size() && !lines.get(position).contains(ALARM_SECTION)) {
+            position++;
+        }
+        if (position == lines.size()) {
+            throw new IOException("Unable to find \"" + ALARM_SECTION + "\" in the properties file");
+        }
+
+        // Add the strings to the properties file so that the alarms can be triggered there
+        List<String> alarmLines = new ArrayList<>(alarms.size());
+        for (Map.Entry<String, String> alarm : alarms.entrySet()) {
+            alarmLines.add(alarm.getKey() + " = " + alarm.getValue());
+        }
+        lines.addAll(position + 1, alarmLines);
+        write(propertiesFile, lines);
+    }
+
+    @Override
+    public boolean remove(String alarmName) throws IOException {
+        return !removeAll(Collections.singleton(alarmName)).isEmpty();
+    }
+
+    @Override
+    public Set<String> removeAll(Collection<String> alarmNames) throws IOException {
+        File propertiesFile = context.getPropertiesAssistant().getPropertiesFile();
+        List<String> lines = Files.readAllLines(propertiesFile.toPath(), StandardCharsets.UTF_8);
+
+        // Keep every line that is not the first line of one of the alarms to remove
+        Set<String> remaining = new HashSet<>(alarmNames);
+        Set<String> removed = new HashSet<>();
+        List<String> keptLines = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            String alarmName = getAlarmName(line);
+            if (alarmName != null && remaining.remove(alarmName)) {
+                removed.add(alarmName);
+            } else {
+                keptLines.add(line);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            write(propertiesFile, keptLines);
+        }
+        return removed;
+    }
+
+    /**
+     * The alarms of this store are part of the properties file and are therefore loaded together with it, so there are
+     * no additional alarms.
+     *
+     * @return an empty map
+     */
+    @Override
+    public Map<String, String> getAlarms() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Writes the lines to the properties file and syncs it to disk
+     */
+    private void write(File propertiesFile, List<String> lines) throws IOException {
+        Files.write(propertiesFile.toPath(), lines, StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(propertiesFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Gets the name of the alarm (or any other property) that is set in the line, or null if the line does not set
+     * anything
+     */
+    private String getAlarmName(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("!")) {
+            return null;
+        }
+        int separator = 0;
+        while (separator < trimmed.length() && "=: \t".indexOf(trimmed.charAt(separator)) < 0) {
+            separator++;
+        }
+        String rest = trimmed.substring(separator).trim();
+        if (!rest.startsWith("=") && !rest.startsWith(":")) {
+            return null;
+        }
+        return trimmed.substring(0, separator);
+    }
+}
@@ -0,0 +1,148 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ReloadDebouncer sits in front of a reload that is expensive and requested a lot, like reloading all alarms every
+ * time the properties file changes. Requests are collected until no new request came in for the quiet period, or
+ * until the oldest request waited for the maximum delay, and are then handled by a single reload.
+ * <p>
+ * Only one reload runs at a time. A request that comes in while a reload is running always leads to another reload
+ * after it, so the last change is never lost.
+ * </p>
+ */
+public class ReloadDebouncer {
+    private final ScheduledExecutorService executor;
+    private final Runnable reload;
+    private final long quietPeriod;
+    private final long maxDelay;
+    private final ReentrantLock reloadLock;
+    private final AtomicLong requestCount;
+    private final AtomicLong reloadCount;
+    private final AtomicLong suppressedCount;
+    private ScheduledFuture<?> pendingReload;
+    private int pendingRequests;
+    private long firstRequest;
+    private long lastRequest;
+
+    /**
+     * Creates a new ReloadDebouncer
+     *
+     * @param executor the executor the reloads run on
+     * @param reload the reload
+     * @param quietPeriod the time without a new request after which the reload runs, in milliseconds
+     * @param maxDelay the longest time a request waits for the reload, in milliseconds
+     */
+    public ReloadDebouncer(ScheduledExecutorService executor, Runnable reload, long quietPeriod, long maxDelay) {
+        this.executor = executor;
+        this.reload = reload;
+        this.quietPeriod = TimeUnit.MILLISECONDS.toNanos(quietPeriod);
+        this.maxDelay = TimeUnit.MILLISECONDS.toNanos(Math.max(quietPeriod, maxDelay));
+        this.reloadLock = new ReentrantLock();
+        this.requestCount = new AtomicLong();
+        this.reloadCount = new AtomicLong();
+        this.suppressedCount = new AtomicLong();
+    }
+
+    /**
+     * Requests a reload. It runs once the requests stopped for the quiet period, but no later than the maximum delay
+     * after the first of them.
+     */
+    public void request() {
+        requestCount.incrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (pendingRequests == 0) {
+                firstRequest = now;
+            }
+            pendingRequests++;
+            lastRequest = now;
+
+            if (pendingReload != null) {
+                pendingReload.cancel(false);
+            }
+            long deadline = Math.min(lastRequest + quietPeriod, firstRequest + maxDelay);
+            pendingReload = executor.schedule(this::runPendingReload, Math.max(0, deadline - now),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Reloads right away on the calling thread, together with all requests that are pending. If a reload is running,
+     * it waits for it to finish first.
+     */
+    public void reloadNow() {
+        int requests;
+        synchronized (this) {
+            requests = takePendingRequests();
+        }
+        runReload(requests + 1);
+    }
+
+    /**
+     * Gets the number of reloads that were requested
+     *
+     * @return the number of requested reloads
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Gets the number of reloads that actually ran
+     *
+     * @return the number of reloads that ran
+     */
+    public long getReloadCount() {
+        return reloadCount.get();
+    }
+
+    /**
+     * Gets the number of requests that did not need a reload of their own, because they were handled together with
+     * other requests
+     *
+     * @return the number of suppressed reloads
+     */
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    private void runPendingReload() {
+        int requests;
+        synchronized (this) {
+            requests = takePendingRequests();
+        }
+        if (requests > 0) {
+            runReload(requests);
+        }
+    }
+
+    /**
+     * Takes all pending requests, so that the reload that is about to run handles them. Must be called while
+     * synchronized on this.
+     */
+    private int takePendingRequests() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+            pendingReload = null;
+        }
+        int requests = pendingRequests;
+        pendingRequests = 0;
+        return requests;
+    }
+
+    private void runReload(int requests) {
+        reloadLock.lock();
+        try {
+            reload.run();
+        } finally {
+            reloadLock.unlock();
+            reloadCount.incrementAndGet();
+            suppressedCount.addAndGet(requests - 1);
+        }
+    }
+}
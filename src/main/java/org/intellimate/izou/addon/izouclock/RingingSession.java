@@ -0,0 +1,87 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A RingingSession rings an alarm repeatedly until it was rung a certain number of times or until it is stopped. It
+ * does not occupy a thread while it waits for the next ring: every ring is its own short task on a scheduler, so any
+ * number of sessions can ring at the same time on a single thread.
+ */
+class RingingSession implements Runnable {
+    private final ScheduledExecutorService scheduler;
+    private final Runnable ring;
+    private final long interval;
+    private final int maxRings;
+    private final AtomicBoolean stopped;
+    private volatile ScheduledFuture<?> nextRing;
+    private int rings;
+
+    /**
+     * Creates a new RingingSession
+     *
+     * @param scheduler the scheduler the rings are run on
+     * @param ring the task that rings the alarm once
+     * @param interval the time between the start of two rings, in milliseconds
+     * @param maxRings the maximum number of times the alarm is rung
+     */
+    RingingSession(ScheduledExecutorService scheduler, Runnable ring, long interval, int maxRings) {
+        this.scheduler = scheduler;
+        this.ring = ring;
+        this.interval = interval;
+        this.maxRings = maxRings;
+        this.stopped = new AtomicBoolean(false);
+        this.rings = 0;
+    }
+
+    /**
+     * Rings the alarm for the first time right away
+     */
+    void start() {
+        // the future is not kept: the first ring may already have scheduled the next one when schedule returns, and
+        // a stopped session does not ring anyway
+        scheduler.execute(this);
+    }
+
+    /**
+     * Stops the session, the alarm will not be rung again
+     */
+    void stop() {
+        if (stopped.compareAndSet(false, true)) {
+            ScheduledFuture<?> future = nextRing;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the session is stopped
+     *
+     * @return true if the session was stopped, else false
+     */
+    boolean isStopped() {
+        return stopped.get();
+    }
+
+    @Override
+    public void run() {
+        if (stopped.get() || rings >= maxRings) {
+            return;
+        }
+
+        ring.run();
+        rings++;
+
+        if (!stopped.get() && rings < maxRings) {
+            ScheduledFuture<?> future = scheduler.schedule(this, interval, TimeUnit.MILLISECONDS);
+            nextRing = future;
+            // stop() may have run while the next ring was scheduled and cancelled the previous one instead
+            if (stopped.get()) {
+                future.cancel(false);
+            }
+        }
+    }
+}
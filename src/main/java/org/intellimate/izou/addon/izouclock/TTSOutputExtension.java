@@ -6,8 +6,6 @@ import org.intellimate.izou.events.EventModel;
 import org.intellimate.izou.resource.ResourceModel;
 import org.intellimate.izou.sdk.Context;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Locale;
 
@@ -49,10 +47,10 @@ public class TTSOutputExtension extends leanderk.izou.tts.outputextension.TTSOut
             return null;
         }
 
-        Calendar calendar = new GregorianCalendar();
-        int hour24  = calendar.get(Calendar.HOUR_OF_DAY);
-        int hour12  = calendar.get(Calendar.HOUR);
-        int min = calendar.get(Calendar.MINUTE);
+        int secondOfDay = TimeSource.getDefault().secondOfDay();
+        int hour24  = secondOfDay / (60 * 60);
+        int hour12  = hour24 % 12;
+        int min = secondOfDay / 60 % 60;
 
         String state;
         if (hour24 < 12 || hour24 == 24) {
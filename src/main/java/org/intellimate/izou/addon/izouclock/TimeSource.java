@@ -0,0 +1,216 @@
+package org.intellimate.izou.addon.izouclock;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * The TimeSource is the addOn's single source for the current time. It is based on a {@link Clock}, so it can be
+ * replaced (for example by a fixed clock) wherever the current time is needed.
+ * <p>
+ * All values are calculated arithmetically from the epoch second and the UTC offset of the clock's time zone. The
+ * offset is cached until the next transition of the time zone (for example the next daylight saving time change), so
+ * asking for the current time creates no objects at all.
+ * </p>
+ */
+public class TimeSource {
+    /**
+     * The number of seconds in a week
+     */
+    public static final int SECONDS_IN_WEEK = 7 * 24 * 60 * 60;
+    private static final int SECONDS_IN_DAY = 24 * 60 * 60;
+
+    /**
+     * The 1st of January 1970 was a thursday, 4 days after the start of the week (sunday)
+     */
+    private static final long EPOCH_SECOND_OF_WEEK = 4L * SECONDS_IN_DAY;
+
+    private static volatile TimeSource defaultTimeSource = new TimeSource(Clock.systemDefaultZone());
+
+    private final Clock clock;
+    private final ZoneRules zoneRules;
+    private volatile OffsetPeriod offsetPeriod;
+
+    /**
+     * Creates a new TimeSource
+     *
+     * @param clock the clock that provides the current instant and time zone
+     */
+    public TimeSource(Clock clock) {
+        this.clock = clock;
+        this.zoneRules = clock.getZone().getRules();
+        this.offsetPeriod = new OffsetPeriod(0, 0, 0);
+    }
+
+    /**
+     * Gets the TimeSource that is shared by the addOn
+     *
+     * @return the shared TimeSource
+     */
+    public static TimeSource getDefault() {
+        return defaultTimeSource;
+    }
+
+    /**
+     * Replaces the TimeSource that is shared by the addOn
+     *
+     * @param timeSource the new shared TimeSource
+     */
+    public static void setDefault(TimeSource timeSource) {
+        defaultTimeSource = timeSource;
+    }
+
+    /**
+     * Gets the clock of the TimeSource
+     *
+     * @return the clock of the TimeSource
+     */
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Gets the current epoch second (UTC)
+     *
+     * @return the current epoch second
+     */
+    public long epochSecond() {
+        return Math.floorDiv(clock.millis(), 1000);
+    }
+
+    /**
+     * Gets the current local epoch second, meaning the epoch second shifted by the current UTC offset
+     *
+     * @return the current local epoch second
+     */
+    public long localEpochSecond() {
+        long epochSecond = epochSecond();
+        return epochSecond + offsetAt(epochSecond);
+    }
+
+    /**
+     * Gets the current local epoch millisecond, meaning the epoch millisecond shifted by the current UTC offset
+     *
+     * @return the current local epoch millisecond
+     */
+    public long localEpochMilli() {
+        long epochMilli = clock.millis();
+        return epochMilli + offsetAt(Math.floorDiv(epochMilli, 1000)) * 1000L;
+    }
+
+    /**
+     * Gets the current UTC offset of the clock's time zone
+     *
+     * @return the current UTC offset in seconds
+     */
+    public int offsetSeconds() {
+        return offsetAt(epochSecond());
+    }
+
+    /**
+     * Gets the seconds passed since sunday at 00:00:00 (local time)
+     *
+     * @return the current second of the week
+     */
+    public int secondOfWeek() {
+        return secondOfWeek(localEpochSecond());
+    }
+
+    /**
+     * Gets the seconds passed since sunday at 00:00:00 at the given local epoch second
+     *
+     * @param localEpochSecond the local epoch second, see {@link #localEpochSecond()}
+     * @return the second of the week
+     */
+    public static int secondOfWeek(long localEpochSecond) {
+        return (int) Math.floorMod(localEpochSecond + EPOCH_SECOND_OF_WEEK, SECONDS_IN_WEEK);
+    }
+
+    /**
+     * Gets the milliseconds passed since sunday at 00:00:00 (local time)
+     *
+     * @return the current millisecond of the week
+     */
+    public long millisOfWeek() {
+        return Math.floorMod(localEpochMilli() + EPOCH_SECOND_OF_WEEK * 1000, SECONDS_IN_WEEK * 1000L);
+    }
+
+    /**
+     * Gets the seconds passed since 00:00:00 today (local time)
+     *
+     * @return the current second of the day
+     */
+    public int secondOfDay() {
+        return (int) Math.floorMod(localEpochSecond(), SECONDS_IN_DAY);
+    }
+
+    /**
+     * Gets the seconds from now until the next time the given second of the week comes around. If it is right now, 0
+     * is returned.
+     *
+     * @param alarmSecondOfWeek the second of the week
+     * @return the seconds until the second of the week comes around
+     */
+    public long secondsUntil(int alarmSecondOfWeek) {
+        return Math.floorMod((long) alarmSecondOfWeek - secondOfWeek(), SECONDS_IN_WEEK);
+    }
+
+    /**
+     * Gets the epoch second (UTC) of the next time the given second of the week comes around
+     *
+     * @param alarmSecondOfWeek the second of the week
+     * @return the epoch second of the next time the second of the week comes around
+     */
+    public long nextFireEpochSecond(int alarmSecondOfWeek) {
+        return epochSecond() + secondsUntil(alarmSecondOfWeek);
+    }
+
+    /**
+     * Calculates the seconds passed since sunday at 00:00:00 for the given day and time
+     *
+     * @param day the day of the week, where sunday is 1 and saturday is 7
+     * @param hours the hour of the day
+     * @param minutes the minute of the hour
+     * @param seconds the second of the minute
+     * @return the second of the week
+     */
+    public static int secondOfWeek(int day, int hours, int minutes, int seconds) {
+        return (day - 1) * SECONDS_IN_DAY + hours * 60 * 60 + minutes * 60 + seconds;
+    }
+
+    /**
+     * Gets the UTC offset in seconds at the given epoch second, from the cache if possible
+     */
+    private int offsetAt(long epochSecond) {
+        OffsetPeriod period = offsetPeriod;
+        if (epochSecond < period.start || epochSecond >= period.end) {
+            period = calculateOffsetPeriod(epochSecond);
+            offsetPeriod = period;
+        }
+        return period.offset;
+    }
+
+    private OffsetPeriod calculateOffsetPeriod(long epochSecond) {
+        Instant instant = Instant.ofEpochSecond(epochSecond);
+        int offset = zoneRules.getOffset(instant).getTotalSeconds();
+        ZoneOffsetTransition nextTransition = zoneRules.nextTransition(instant);
+        long end = nextTransition == null ? Long.MAX_VALUE : nextTransition.toEpochSecond();
+        return new OffsetPeriod(offset, epochSecond, end);
+    }
+
+    /**
+     * A period of time in which the UTC offset does not change
+     */
+    private static class OffsetPeriod {
+        private final int offset;
+        private final long start;
+        private final long end;
+
+        OffsetPeriod(int offset, long start, long end) {
+            this.offset = offset;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link AlarmScheduler} based on a hierarchical timing wheel. The wheel consists of a second, a minute, an hour and
+ * a day wheel, which together cover a whole week (604800 seconds). Alarms that are further away than that simply stay
+ * in the day wheel until their week comes around.
+ * <p>
+ * Scheduling, cancelling and firing an alarm are all O(1), no matter how many alarms are scheduled. A single ticker
+ * thread advances the wheel once a second and hands the alarms that are due to the executor.
+ * </p>
+ * <p>
+ * The wheel ticks on {@link System#nanoTime()}, so changes to the wall clock do not make it skip or repeat ticks.
+ * </p>
+ */
+public class TimingWheelAlarmScheduler implements AlarmScheduler {
+    private static final int[] WHEEL_SIZES = {60, 60, 24, 7};
+    private static final long[] TICKS_PER_SLOT = {1, 60, 60 * 60, 24 * 60 * 60};
+
+    private final Context context;
+    private final Executor executor;
+    private final LoggedScheduledExecutor ticker;
+    private final Slot[][] wheels;
+    private final HashMap<String, Entry> entries;
+    private final long startNanos;
+    private long currentTick;
+
+    /**
+     * Creates a new TimingWheelAlarmScheduler and starts its ticker thread
+     *
+     * @param context the context of the addOn
+     * @param executor the executor on which alarms that are due are run
+     */
+    public TimingWheelAlarmScheduler(Context context, Executor executor) {
+        this.context = context;
+        this.executor = executor;
+        this.entries = new HashMap<>();
+        this.wheels = new Slot[WHEEL_SIZES.length][];
+        for (int level = 0; level < WHEEL_SIZES.length; level++) {
+            wheels[level] = new Slot[WHEEL_SIZES[level]];
+            for (int i = 0; i < WHEEL_SIZES[level]; i++) {
+                wheels[level][i] = new Slot();
+            }
+        }
+
+        startNanos = System.nanoTime();
+        currentTick = 0;
+        ticker = new LoggedScheduledExecutor(context, 1);
+        ticker.scheduleAtFixedRate(this::advance, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void schedule(String alarmName, Runnable alarm, long initialDelay, long period, TimeUnit unit) {
+        cancel(alarmName);
+
+        Entry entry = new Entry(alarmName, alarm, unit.toSeconds(period));
+        entry.expiration = currentTick + Math.max(1, unit.toSeconds(initialDelay));
+        entries.put(alarmName, entry);
+        insert(entry);
+    }
+
+    @Override
+    public synchronized boolean cancel(String alarmName) {
+        Entry entry = entries.remove(alarmName);
+        if (entry == null) {
+            return false;
+        }
+        entry.unlink();
+        return true;
+    }
+
+    @Override
+    public synchronized long getDelay(String alarmName, TimeUnit unit) {
+        Entry entry = entries.get(alarmName);
+        if (entry == null) {
+            return -1;
+        }
+        return unit.convert(Math.max(0, entry.expiration - currentTick), TimeUnit.SECONDS);
+    }
+
+    @Override
+    public synchronized void cancelAll() {
+        for (Entry entry : entries.values()) {
+            entry.unlink();
+        }
+        entries.clear();
+    }
+
+    @Override
+    public synchronized Set<String> getScheduledAlarms() {
+        return Collections.unmodifiableSet(new HashSet<>(entries.keySet()));
+    }
+
+    /**
+     * Stops the ticker thread. Alarms that are still scheduled will not go off anymore.
+     */
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * Advances the wheel up to the current time. If the ticker thread fell behind, all missed ticks are processed in
+     * order, so no alarm is skipped.
+     */
+    private synchronized void advance() {
+        long targetTick = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos);
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // cascade from the coarsest wheel that starts a new slot down to the minute wheel
+            for (int level = WHEEL_SIZES.length - 1; level > 0; level--) {
+                if (currentTick % TICKS_PER_SLOT[level] == 0) {
+                    cascade(wheels[level][slotIndex(level, currentTick)]);
+                }
+            }
+
+            fire(wheels[0][slotIndex(0, currentTick)]);
+        }
+    }
+
+    private void cascade(Slot slot) {
+        Entry entry = slot.takeAll();
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.next = null;
+            insert(entry);
+            entry = next;
+        }
+    }
+
+    private void fire(Slot slot) {
+        Entry entry = slot.takeAll();
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.next = null;
+
+            try {
+                executor.execute(entry.alarm);
+            } catch (Exception e) {
+                context.getLogger().error("Unable to run alarm: " + entry.alarmName, e);
+            }
+
+            if (entry.period > 0) {
+                entry.expiration += entry.period;
+                insert(entry);
+            } else {
+                entries.remove(entry.alarmName);
+            }
+            entry = next;
+        }
+    }
+
+    /**
+     * Puts the entry into the finest wheel that still covers its expiration, relative to the current tick.
+     */
+    private void insert(Entry entry) {
+        long expiration = entry.expiration;
+        int level = 0;
+        while (level < WHEEL_SIZES.length - 1
+                && expiration / TICKS_PER_SLOT[level + 1] != currentTick / TICKS_PER_SLOT[level + 1]) {
+            level++;
+        }
+        wheels[level][slotIndex(level, expiration)].add(entry);
+    }
+
+    private static int slotIndex(int level, long tick) {
+        return (int) ((tick / TICKS_PER_SLOT[level]) % WHEEL_SIZES[level]);
+    }
+
+    /**
+     * A slot of a wheel, a doubly linked list of entries with a sentinel head
+     */
+    private static class Slot {
+        private final Entry head = new Entry(null, null, 0);
+
+        Slot() {
+            head.next = head;
+            head.previous = head;
+        }
+
+        void add(Entry entry) {
+            entry.previous = head.previous;
+            entry.next = head;
+            head.previous.next = entry;
+            head.previous = entry;
+        }
+
+        /**
+         * Removes all entries from the slot and returns them as a singly linked list (terminated by null)
+         */
+        Entry takeAll() {
+            if (head.next == head) {
+                return null;
+            }
+            Entry first = head.next;
+            head.previous.next = null;
+            head.next = head;
+            head.previous = head;
+
+            for (Entry entry = first; entry != null; entry = entry.next) {
+                entry.previous = null;
+            }
+            return first;
+        }
+    }
+
+    /**
+     * A scheduled alarm inside the wheel
+     */
+    private static class Entry {
+        private final String alarmName;
+        private final Runnable alarm;
+        private final long period;
+        private long expiration;
+        private Entry previous;
+        private Entry next;
+
+        Entry(String alarmName, Runnable alarm, long period) {
+            this.alarmName = alarmName;
+            this.alarm = alarm;
+            this.period = period;
+        }
+
+        void unlink() {
+            if (previous != null) {
+                previous.next = next;
+                next.previous = previous;
+            }
+            previous = null;
+            next = null;
+        }
+    }
+}
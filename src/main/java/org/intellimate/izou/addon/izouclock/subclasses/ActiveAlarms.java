@@ -0,0 +1,145 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ActiveAlarms holds the result of {@link AlarmActivator#checkActivity(int, int, int, int, ActiveAlarms)}: all alarms
+ * that should be activated at a certain time. The object is meant to be reused for every check, so that checking the
+ * alarms does not create any garbage once it has grown to the number of alarms that can go off at once.
+ * <p>
+ * Alarms that are kept in the {@link AlarmTable} of the activator have no settings object, only their name, their
+ * repeat state and their events.
+ * </p>
+ */
+public class ActiveAlarms {
+    private String[] names;
+    private boolean[] repeats;
+    private List<?>[] events;
+    private AlarmRepeatSettings[] settings;
+    private int size;
+
+    /**
+     * Creates a new, empty ActiveAlarms object
+     */
+    public ActiveAlarms() {
+        names = new String[4];
+        repeats = new boolean[4];
+        events = new List<?>[4];
+        settings = new AlarmRepeatSettings[4];
+        size = 0;
+    }
+
+    /**
+     * Removes all alarms
+     */
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(events, 0, size, null);
+        Arrays.fill(settings, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Adds an alarm
+     *
+     * @param name the name of the alarm
+     * @param repeatSettings the settings of the alarm
+     */
+    void add(String name, AlarmRepeatSettings repeatSettings) {
+        add(name, repeatSettings.isState(), repeatSettings.getEventsToFire());
+        settings[size - 1] = repeatSettings;
+    }
+
+    /**
+     * Adds an alarm that has no settings object, like the alarms of an {@link AlarmTable}
+     *
+     * @param name the name of the alarm
+     * @param repeat true if the alarm repeats every week, else false
+     * @param eventsToFire the events the alarm fires
+     */
+    void add(String name, boolean repeat, List<String> eventsToFire) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            repeats = Arrays.copyOf(repeats, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+            settings = Arrays.copyOf(settings, size * 2);
+        }
+        names[size] = name;
+        repeats[size] = repeat;
+        events[size] = eventsToFire;
+        settings[size] = null;
+        size++;
+    }
+
+    /**
+     * Gets the number of alarms that should be activated
+     *
+     * @return the number of alarms that should be activated
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether there is no alarm to activate
+     *
+     * @return true if there is no alarm to activate, else false
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the name of the alarm at the given position
+     *
+     * @param index the position of the alarm, between 0 and {@link #size()} (exclusive)
+     * @return the name of the alarm
+     */
+    public String getName(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return names[index];
+    }
+
+    /**
+     * Gets whether the alarm at the given position repeats every week
+     *
+     * @param index the position of the alarm, between 0 and {@link #size()} (exclusive)
+     * @return true if the alarm repeats, else false
+     */
+    public boolean isRepeat(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return repeats[index];
+    }
+
+    /**
+     * Gets the events the alarm at the given position fires. The list can not be modified.
+     *
+     * @param index the position of the alarm, between 0 and {@link #size()} (exclusive)
+     * @return the events of the alarm
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getEvents(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return (List<String>) events[index];
+    }
+
+    /**
+     * Gets the settings of the alarm at the given position
+     *
+     * @param index the position of the alarm, between 0 and {@link #size()} (exclusive)
+     * @return the settings of the alarm, or null if the alarm is kept in an {@link AlarmTable}
+     */
+    public AlarmRepeatSettings getSettings(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return settings[index];
+    }
+}
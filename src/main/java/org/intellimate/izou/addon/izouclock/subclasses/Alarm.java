@@ -1,5 +1,6 @@
 package org.intellimate.izou.addon.izouclock.subclasses;
 
+import org.intellimate.izou.addon.izouclock.TimeSource;
 import org.intellimate.izou.sdk.Context;
 
 import java.util.Calendar;
@@ -25,7 +26,6 @@ public abstract class Alarm {
     public Alarm(Context context) {
         this.context = context;
         this.state = getPropertiesBoolean("alarmActivityState");
-        this.calendar = new GregorianCalendar();
     }
 
     /**
@@ -50,11 +50,16 @@ public abstract class Alarm {
     }
 
     /**
-     * Gets the calendar object of type {@link java.util.Calendar}
+     * Gets the calendar object of type {@link java.util.Calendar}. It is only created when it is needed for the first
+     * time, at the time of the {@link TimeSource}.
      *
      * @return the calendar object
      */
     public Calendar getCalendar() {
+        if (calendar == null) {
+            calendar = new GregorianCalendar();
+            calendar.setTimeInMillis(TimeSource.getDefault().getClock().millis());
+        }
         return calendar;
     }
 
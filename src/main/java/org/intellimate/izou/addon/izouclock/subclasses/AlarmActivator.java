@@ -3,18 +3,32 @@ package org.intellimate.izou.addon.izouclock.subclasses;
 import org.intellimate.izou.sdk.Context;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * AlarmActivator is an alarm that is used to compare the scheduled time with the actual time to know when to fire its
  * event.
+ * <p>
+ * If there are more alarms than set in {@link #TABLE_THRESHOLD_PROPERTY}, the plain weekly alarms are kept in an
+ * {@link AlarmTable} instead of the settings map, so there is no settings object per alarm. Only the alarms that do not
+ * fit into the table (see {@link AlarmTable#canHold(AlarmRepeatSettings)}) stay in the settings map then.
+ * </p>
  */
 public class AlarmActivator extends Alarm {
     /**
      * A time buffer in which the alarm can still be triggered, in seconds
      */
     public static final int TRIGGER_BUFFER = 5;
+
+    /**
+     * The name of the property that sets the number of alarms above which the plain weekly alarms are kept in an
+     * {@link AlarmTable} (10000 by default)
+     */
+    public static final String TABLE_THRESHOLD_PROPERTY = "alarmTableThreshold";
+    private static final int DEFAULT_TABLE_THRESHOLD = 10000;
     private HashMap<String, AlarmRepeatSettings> settingsMap;
+    private AlarmTable alarmTable;
+    private AlarmIndex alarmIndex;
+    private List<String> errors;
     public static final String ALARM_PREFIX = "alarmSettings";
 
     /**
@@ -23,14 +37,39 @@ public class AlarmActivator extends Alarm {
      * @param context the context of the addOn
      */
     public AlarmActivator(Context context) {
+        this(context, Collections.emptyMap());
+    }
+
+    /**
+     * Creates a new AlarmActivator that, next to the alarms of the properties file, also contains the given alarms
+     *
+     * @param context the context of the addOn
+     * @param storedAlarms additional alarms (by name) with their settings strings, for example from an alarm store
+     */
+    public AlarmActivator(Context context, Map<String, String> storedAlarms) {
+        this(context, storedAlarms, true);
+    }
+
+    /**
+     * Creates a new AlarmActivator with the given alarms, and if wanted the alarms of the properties file
+     *
+     * @param context the context of the addOn
+     * @param storedAlarms the alarms (by name) with their settings strings, for example from an alarm store
+     * @param includeProperties true if the alarms of the properties file should be contained, too
+     */
+    public AlarmActivator(Context context, Map<String, String> storedAlarms, boolean includeProperties) {
         super(context);
-        generateRepeats();
+        generateRepeats(storedAlarms, includeProperties);
     }
 
     /**
      * Checks the activity of the alarm by comparing the current time to the scheduled alarm time. If they match, an
      * array with the key of the alarm and its repeat state is returned. A trigger buffer is applied to the current
      * seconds in order to give the alarm a broader time range of activation.
+     * <p>
+     * If several alarms match, only the first one is returned. Use
+     * {@link #checkActivity(int, int, int, int, ActiveAlarms)} to get all of them.
+     * </p>
      *
      * @param day the current day
      * @param hours the current hour
@@ -42,47 +81,133 @@ public class AlarmActivator extends Alarm {
      */
     public String[] checkActivity(int day, int hours, int minutes, int seconds) {
         String[] activityState = new String[2];
+        ActiveAlarms activeAlarms = new ActiveAlarms();
+        checkActivity(day, hours, minutes, seconds, activeAlarms);
 
-        for (Map.Entry<String, AlarmRepeatSettings> entry : settingsMap.entrySet()) {
-            AlarmRepeatSettings repeatSettings = entry.getValue();
-            if (repeatSettings.getDay() == day
-                    && repeatSettings.getHours() == hours
-                    && repeatSettings.getMinutes() == minutes
-                    && ((repeatSettings.getSeconds() - TRIGGER_BUFFER <= seconds)
-                    && (repeatSettings.getSeconds() + TRIGGER_BUFFER >= seconds))) {
-                activityState[0] = entry.getKey();
-                activityState[1] = Boolean.toString(repeatSettings.isState());
-                return activityState;
-            }
+        if (!activeAlarms.isEmpty()) {
+            activityState[0] = activeAlarms.getName(0);
+            activityState[1] = Boolean.toString(activeAlarms.isRepeat(0));
+            return activityState;
         }
         activityState[0] = "null";
         activityState[1] = "false";
         return activityState;
     }
 
-    private void generateRepeats() {
-        this.settingsMap = new HashMap<>();
-        List<String> alarmRepeats = getAlarmRepeats();
-        for (String alarm : alarmRepeats) {
-            AlarmRepeatSettings repeatSettings = new AlarmRepeatSettings(alarm, getContext());
-            this.settingsMap.put(alarm, repeatSettings);
+    /**
+     * Checks the activity of all alarms by comparing the current time to the scheduled alarm times, and puts every
+     * alarm that should be activated into the result. A trigger buffer is applied to the current seconds in order to
+     * give the alarms a broader time range of activation.
+     * <p>
+     * The alarms are looked up in an index (or in the {@link AlarmTable}) by their second of the week, so the check takes
+     * the same time no matter how many alarms there are. Pass the same result object to every check to avoid creating
+     * garbage.
+     * </p>
+     *
+     * @param day the current day
+     * @param hours the current hour
+     * @param minutes the current minute
+     * @param seconds the current second
+     * @param result the object the active alarms are put into, it is cleared first
+     * @return the number of alarms that should be activated
+     */
+    public int checkActivity(int day, int hours, int minutes, int seconds, ActiveAlarms result) {
+        result.clear();
+        getAlarmIndex().lookup(day, hours, minutes, seconds, result);
+        alarmTable.lookup(day, hours, minutes, seconds, result);
+        return result.size();
+    }
+
+    private synchronized AlarmIndex getAlarmIndex() {
+        if (alarmIndex == null) {
+            alarmIndex = new AlarmIndex(settingsMap);
+        }
+        return alarmIndex;
+    }
+
+    private void generateRepeats(Map<String, String> storedAlarms, boolean includeProperties) {
+        AlarmSettingsLoader loader = new AlarmSettingsLoader(getContext());
+        HashMap<String, AlarmRepeatSettings> loaded = loader.load(storedAlarms, includeProperties);
+        this.errors = loader.getErrors();
+        for (String error : errors) {
+            getContext().getLogger().error(error);
+        }
+
+        if (loaded.size() <= getTableThreshold()) {
+            this.settingsMap = loaded;
+            this.alarmTable = AlarmTable.empty();
+            return;
         }
+        AlarmTable.Builder builder = new AlarmTable.Builder(loaded.size());
+        Iterator<Map.Entry<String, AlarmRepeatSettings>> iterator = loaded.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, AlarmRepeatSettings> alarm = iterator.next();
+            if (AlarmTable.canHold(alarm.getValue())) {
+                builder.add(alarm.getKey(), alarm.getValue());
+                iterator.remove();
+            }
+        }
+        this.alarmTable = builder.build(false);
+        // copied, so the map does not keep the capacity it needed for all alarms
+        this.settingsMap = new HashMap<>(loaded);
+        getContext().getLogger().debug("Keeping " + alarmTable.size() + " alarms in the alarm table, "
+                + settingsMap.size() + " alarms in the settings map");
     }
 
-    private List<String> getAlarmRepeats() {
-        return getContext().getPropertiesAssistant().getProperties().stringPropertyNames().stream()
-                .filter(prop -> prop.contains(ALARM_PREFIX))
-                .collect(Collectors.toList());
+    /**
+     * Gets the number of alarms above which the plain weekly alarms are kept in an {@link AlarmTable}
+     */
+    private int getTableThreshold() {
+        String value = getContext().getPropertiesAssistant().getProperty(TABLE_THRESHOLD_PROPERTY);
+        if (value == null) {
+            return DEFAULT_TABLE_THRESHOLD;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            getContext().getLogger().error("Unable to convert " + TABLE_THRESHOLD_PROPERTY + " to an integer, using "
+                    + DEFAULT_TABLE_THRESHOLD);
+            return DEFAULT_TABLE_THRESHOLD;
+        }
     }
 
     /**
      * Gets the settings map of the alarm. The settings map contains all the information about when the alarm should be
-     * activated and whether it should repeat or not.
+     * activated and whether it should repeat or not. The alarms that are kept in the {@link #getAlarmTable() alarm
+     * table} are not in the settings map.
      *
      * @return the settings map of the alarm.
      */
     public HashMap<String, AlarmRepeatSettings> getSettingsMap() {
         return settingsMap;
     }
-}
 
+    /**
+     * Gets the table of the plain weekly alarms, which is empty unless there are more alarms than set in
+     * {@link #TABLE_THRESHOLD_PROPERTY}
+     *
+     * @return the alarm table
+     */
+    public AlarmTable getAlarmTable() {
+        return alarmTable;
+    }
+
+    /**
+     * Gets the number of alarms, in the settings map and in the alarm table
+     *
+     * @return the number of alarms
+     */
+    public int size() {
+        return settingsMap.size() + alarmTable.size();
+    }
+
+    /**
+     * Gets the errors that occurred while the alarms were loaded, one for every alarm that could not be parsed. The
+     * errors contain the line number of the alarm in the properties file.
+     *
+     * @return the errors that occurred while the alarms were loaded
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,106 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.addon.izouclock.TimeSource;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * AlarmIndex is a hash index over the alarms of an {@link AlarmActivator}, keyed by the second of the week the alarm
+ * goes off at (seconds since sunday at 00:00:00). Finding the alarms of a certain second costs the same, no matter how
+ * many alarms are in the index.
+ */
+class AlarmIndex {
+    private static final int EMPTY = -1;
+    private static final int NO_KEY = Integer.MIN_VALUE;
+
+    private final int[] slotKeys;
+    private final int[] slotHeads;
+    private final int[] next;
+    private final String[] names;
+    private final AlarmRepeatSettings[] settings;
+    private final int mask;
+
+    /**
+     * Creates a new index over all the given alarms
+     *
+     * @param settingsMap the alarms (by name) to index
+     */
+    AlarmIndex(Map<String, AlarmRepeatSettings> settingsMap) {
+        int size = settingsMap.size();
+        int capacity = Integer.highestOneBit(Math.max(4, size * 2 - 1)) << 1;
+        mask = capacity - 1;
+        slotKeys = new int[capacity];
+        slotHeads = new int[capacity];
+        Arrays.fill(slotKeys, NO_KEY);
+        next = new int[size];
+        names = new String[size];
+        settings = new AlarmRepeatSettings[size];
+
+        int entry = 0;
+        for (Map.Entry<String, AlarmRepeatSettings> alarm : settingsMap.entrySet()) {
+            AlarmRepeatSettings repeatSettings = alarm.getValue();
+            names[entry] = alarm.getKey();
+            settings[entry] = repeatSettings;
+
+            int key = TimeSource.secondOfWeek(repeatSettings.getDay(), repeatSettings.getHours(), repeatSettings.getMinutes(),
+                    repeatSettings.getSeconds());
+            int slot = findSlot(key);
+            if (slotKeys[slot] == NO_KEY) {
+                slotKeys[slot] = key;
+                next[entry] = EMPTY;
+            } else {
+                next[entry] = slotHeads[slot];
+            }
+            slotHeads[slot] = entry;
+            entry++;
+        }
+    }
+
+    /**
+     * Adds all alarms that go off at the given time, give or take the trigger buffer, to the result. Like in the
+     * comparison of the settings, the day, hour and minute of an alarm have to match exactly, only the seconds are
+     * allowed to be off by {@link AlarmActivator#TRIGGER_BUFFER}.
+     *
+     * @param day the current day
+     * @param hours the current hour
+     * @param minutes the current minute
+     * @param seconds the current second
+     * @param result the object to add the alarms to
+     */
+    void lookup(int day, int hours, int minutes, int seconds, ActiveAlarms result) {
+        int current = TimeSource.secondOfWeek(day, hours, minutes, seconds);
+        for (int key = current - AlarmActivator.TRIGGER_BUFFER; key <= current + AlarmActivator.TRIGGER_BUFFER; key++) {
+            int slot = findSlot(key);
+            if (slotKeys[slot] == NO_KEY) {
+                continue;
+            }
+
+            for (int entry = slotHeads[slot]; entry != EMPTY; entry = next[entry]) {
+                AlarmRepeatSettings repeatSettings = settings[entry];
+                if (repeatSettings.getDay() == day
+                        && repeatSettings.getHours() == hours
+                        && repeatSettings.getMinutes() == minutes
+                        && Math.abs(repeatSettings.getSeconds() - seconds) <= AlarmActivator.TRIGGER_BUFFER) {
+                    result.add(names[entry], repeatSettings);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the slot of the key, or the empty slot where it belongs if it is not in the index yet
+     */
+    private int findSlot(int key) {
+        int slot = mix(key) & mask;
+        while (slotKeys[slot] != NO_KEY && slotKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -5,6 +5,8 @@ import org.intellimate.izou.addon.izousound.TrackInfoGenerator;
 import org.intellimate.izou.sdk.Context;
 import org.intellimate.izou.sdk.frameworks.music.player.TrackInfo;
 
+import java.nio.file.Paths;
+import java.util.Optional;
 import java.util.Properties;
 
 /**
@@ -53,6 +55,17 @@ public class AlarmOutput extends Alarm {
             audioFileName = null;
         }
 
+        // play the pre-cut clip of the ringtone if there is one, so the player does not have to seek
+        RingtoneClipCache clipCache = ClockAddOn.getRingtoneClipCache();
+        if (ringtoneState && clipCache != null && duration > 0) {
+            Optional<RingtoneClipCache.Clip> clip = clipCache.getClip(Paths.get(audioFileName), startPoint, duration);
+            if (clip.isPresent()) {
+                audioFileName = clip.get().getPath().toString();
+                startPoint = 0;
+                duration = clip.get().getDuration();
+            }
+        }
+
         if (duration == -1) {
             endPoint = -1;
         } else {
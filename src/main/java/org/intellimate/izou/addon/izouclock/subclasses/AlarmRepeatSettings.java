@@ -17,7 +17,10 @@ public class AlarmRepeatSettings {
     private int hours;
     private int minutes;
     private int seconds;
-    private Set<String> eventsToFire;
+    private int millis;
+    private List<String> eventsToFire;
+    private RecurrenceRule recurrenceRule;
+    private CatchUpPolicy catchUpPolicy;
 
     /**
      * Creates a new AlarmRepeatSettings object
@@ -25,9 +28,20 @@ public class AlarmRepeatSettings {
      * @param key the key of the alarm to get the settings for
      */
     public AlarmRepeatSettings(String key, Context context) {
+        this(context, context.getPropertiesAssistant().getProperty(key));
+    }
+
+    /**
+     * Creates a new AlarmRepeatSettings object from a settings string
+     *
+     * @param context the context of the addOn
+     * @param settings the settings string of the alarm, in the same form as in the properties file
+     */
+    public AlarmRepeatSettings(Context context, String settings) {
         this.context = context;
-        eventsToFire = new HashSet<>();
-        getSettings(context.getPropertiesAssistant().getProperty(key));
+        millis = -1;
+        eventsToFire = Collections.emptyList();
+        getSettings(settings);
     }
 
     /**
@@ -36,16 +50,20 @@ public class AlarmRepeatSettings {
      * @param settings the value associated to the alarm (key) from the properties file
      */
     public void getSettings(String settings) {
-        // Settings should be in the form of day;state;hour;minute;second
+        // Settings should be in the form of day;state;hour;minute;second, where day may also be a recurrence rule. They
+        // can be followed by the events and a catch-up policy (catchup:POLICY).
         String[] parts = settings.split(";");
         int numberOfParts = parts.length;
+        Set<String> events = new LinkedHashSet<>(eventsToFire);
+        String rule = null;
 
         if (numberOfParts > 0) {
             parts[0] = parts[0].toLowerCase();
-            try {
+            if (RecurrenceRule.isSingleDay(parts[0])) {
                 day = checkDay(parts[0]);
-            } catch (IllegalStateException e) {
-                context.getLogger().warn("Day has to be a valid day", e);
+            } else {
+                rule = parts[0];
+                day = 0;
             }
         }
         if (numberOfParts > 1)
@@ -55,31 +73,28 @@ public class AlarmRepeatSettings {
         if (numberOfParts > 3)
             minutes = analyseTime(parts[3]);
         if (numberOfParts > 4)
-            seconds = analyseTime(parts[4]);
-        if (numberOfParts > 5) {
-            for (int i = 5; i < parts.length; i++) {
-                eventsToFire.add(checkEventID(parts[i]));
-            }
-        } else {
-            if (!eventsToFire.contains("izou.alarm")) {
-                eventsToFire.add("izou.alarm");
+            analyseSeconds(parts[4]);
+        catchUpPolicy = null;
+        for (int i = 5; i < parts.length; i++) {
+            if (parts[i].startsWith(CatchUpPolicy.SETTINGS_PREFIX)) {
+                catchUpPolicy = analyseCatchUpPolicy(parts[i].substring(CatchUpPolicy.SETTINGS_PREFIX.length()));
+            } else {
+                events.add(checkEventID(parts[i]));
             }
         }
+        if (events.isEmpty()) {
+            events.add(EventIds.DEFAULT_EVENT);
+        }
+        eventsToFire = EventIds.intern(events);
 
-        int index = 6;
-        boolean eventsExist = true;
-        while (eventsExist) {
-            if (numberOfParts > index) {
-                String eventID = checkEventID(parts[index]);
-                if (!eventsToFire.contains(eventID)) {
-                    eventsToFire.add(eventID);
-                }
-                index++;
-            } else {
-                eventsExist = false;
+        recurrenceRule = null;
+        if (rule != null) {
+            try {
+                recurrenceRule = RecurrenceRule.compile(rule, hours, minutes, seconds);
+            } catch (IllegalStateException e) {
+                context.getLogger().warn("Day has to be a valid day or recurrence rule", e);
             }
         }
-
     }
 
     private int checkDay(String value) throws IllegalStateException {
@@ -106,6 +121,24 @@ public class AlarmRepeatSettings {
         return Integer.parseInt(value);
     }
 
+    /**
+     * Parses the seconds, which may have up to 3 decimal places for the milliseconds (for example 30.250)
+     */
+    private void analyseSeconds(String value) throws IllegalStateException {
+        int point = value.indexOf('.');
+        if (point < 0) {
+            seconds = analyseTime(value);
+            millis = -1;
+            return;
+        }
+        String fraction = value.substring(point + 1);
+        if (fraction.isEmpty() || fraction.length() > 3) {
+            throw new IllegalStateException("seconds can have between 1 and 3 decimal places");
+        }
+        seconds = analyseTime(value.substring(0, point));
+        millis = Integer.parseInt((fraction + "00").substring(0, 3));
+    }
+
     private boolean analyseDayState(String value) throws IllegalStateException {
         switch (value) {
             case "true":
@@ -117,18 +150,23 @@ public class AlarmRepeatSettings {
         }
     }
 
-    private String checkEventID(String eventID) {
-        if (context.getPropertiesAssistant().getEventPropertiesAssistant().getEventID(eventID) == null) {
-            return "izou.alarm";
-        } else {
-            return context.getPropertiesAssistant().getEventPropertiesAssistant().getEventID(eventID);
+    private CatchUpPolicy analyseCatchUpPolicy(String value) {
+        try {
+            return CatchUpPolicy.parse(value);
+        } catch (IllegalStateException e) {
+            context.getLogger().warn("Catch-up policy has to be skip, late or a number of seconds", e);
+            return null;
         }
     }
 
+    private String checkEventID(String eventID) {
+        return EventIds.resolve(context, eventID);
+    }
+
     /**
      * Gets the day of the settings
      *
-     * @return the day of the settings
+     * @return the day of the settings, or 0 if the alarm goes off according to a {@link RecurrenceRule}
      */
     public int getDay() {
         return day;
@@ -216,11 +254,72 @@ public class AlarmRepeatSettings {
     }
 
     /**
-     * Gets all events to fire
+     * Gets the millisecond of the settings. Alarms with a millisecond are scheduled precisely, with a deadline instead
+     * of to the second.
+     *
+     * @return the millisecond of the settings (0 - 999), or -1 if the alarm has no millisecond
+     */
+    public int getMillis() {
+        return millis;
+    }
+
+    /**
+     * Checks whether the alarm has a millisecond and is scheduled precisely
+     *
+     * @return true if the alarm has a millisecond, else false
+     */
+    public boolean isPrecise() {
+        return millis >= 0;
+    }
+
+    /**
+     * Gets the recurrence rule of the alarm, if its day is more than a single day of the week
+     *
+     * @return the recurrence rule, or null if the alarm goes off once a week on {@link #getDay()}
+     */
+    public RecurrenceRule getRecurrenceRule() {
+        return recurrenceRule;
+    }
+
+    /**
+     * Gets the catch-up policy of the alarm, which decides whether the alarm goes off when it missed its time
+     *
+     * @return the catch-up policy, or null if the alarm uses the default policy of the addOn
+     */
+    public CatchUpPolicy getCatchUpPolicy() {
+        return catchUpPolicy;
+    }
+
+    /**
+     * Gets all events to fire. The list is shared with all alarms that fire the same events (see
+     * {@link EventIds#intern(Set)}) and can not be modified.
      *
      * @return all events to fire
      */
     public List<String> getEventsToFire() {
-        return new ArrayList<>(eventsToFire);
+        return eventsToFire;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AlarmRepeatSettings)) return false;
+
+        AlarmRepeatSettings that = (AlarmRepeatSettings) o;
+        return day == that.day
+                && state == that.state
+                && hours == that.hours
+                && minutes == that.minutes
+                && seconds == that.seconds
+                && millis == that.millis
+                && eventsToFire.equals(that.eventsToFire)
+                && Objects.equals(recurrenceRule, that.recurrenceRule)
+                && Objects.equals(catchUpPolicy, that.catchUpPolicy);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(day, state, hours, minutes, seconds, millis, eventsToFire, recurrenceRule,
+                catchUpPolicy);
     }
 }
@@ -0,0 +1,215 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The AlarmSettingsLoader reads all alarms of the addOn and compiles them into {@link AlarmRepeatSettings}.
+ * <p>
+ * The properties file is read in a single streaming pass that only keeps the alarm lines. If there are a lot of
+ * alarms, they are compiled in parallel on the common fork-join pool. An alarm that can not be parsed does not stop the
+ * others from loading: it is left out, and an error with its line number is collected instead.
+ * </p>
+ */
+class AlarmSettingsLoader {
+    /**
+     * The number of alarms from which on they are compiled in parallel
+     */
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    private final Context context;
+    private final List<String> errors;
+
+    /**
+     * Creates a new AlarmSettingsLoader
+     *
+     * @param context the context of the addOn
+     */
+    AlarmSettingsLoader(Context context) {
+        this.context = context;
+        this.errors = Collections.synchronizedList(new ArrayList<>());
+    }
+
+    /**
+     * Loads all alarms of the properties file together with the given stored alarms. Stored alarms replace alarms of
+     * the properties file with the same name.
+     *
+     * @param storedAlarms additional alarms (by name) with their settings strings
+     * @return all alarms that could be parsed, by name
+     */
+    HashMap<String, AlarmRepeatSettings> load(Map<String, String> storedAlarms) {
+        return load(storedAlarms, true);
+    }
+
+    /**
+     * Loads the given stored alarms, and if wanted all alarms of the properties file. Stored alarms replace alarms of
+     * the properties file with the same name.
+     *
+     * @param storedAlarms additional alarms (by name) with their settings strings
+     * @param includeProperties true if the alarms of the properties file should be loaded, too
+     * @return all alarms that could be parsed, by name
+     */
+    HashMap<String, AlarmRepeatSettings> load(Map<String, String> storedAlarms, boolean includeProperties) {
+        List<AlarmLine> alarmLines = includeProperties ? readAlarmLines() : new ArrayList<>();
+        for (Map.Entry<String, String> alarm : storedAlarms.entrySet()) {
+            alarmLines.add(new AlarmLine(-1, alarm.getKey(), alarm.getValue()));
+        }
+
+        Stream<AlarmLine> stream = alarmLines.size() >= PARALLEL_THRESHOLD
+                ? alarmLines.parallelStream()
+                : alarmLines.stream();
+        List<Compiled> compiled = stream.map(this::compile).collect(Collectors.toList());
+
+        // collected in order, so that later lines win just like in the properties file
+        HashMap<String, AlarmRepeatSettings> settingsMap = new HashMap<>(compiled.size() * 2);
+        for (Compiled alarm : compiled) {
+            if (alarm.settings != null) {
+                settingsMap.put(alarm.name, alarm.settings);
+            }
+        }
+        return settingsMap;
+    }
+
+    /**
+     * Gets all errors that occurred while loading, one per alarm that could not be parsed
+     *
+     * @return the errors that occurred while loading
+     */
+    List<String> getErrors() {
+        return errors;
+    }
+
+    private Compiled compile(AlarmLine line) {
+        try {
+            return new Compiled(line.key, new AlarmRepeatSettings(context, line.value));
+        } catch (RuntimeException e) {
+            String location = line.lineNumber < 0 ? "alarm store" : "line " + line.lineNumber;
+            errors.add("Unable to parse " + line.key + " (" + location + "): " + e.getMessage());
+            return new Compiled(line.key, null);
+        }
+    }
+
+    /**
+     * Reads the alarm lines of the properties file. If the file can not be read, the alarms are taken from the loaded
+     * properties instead (without line numbers).
+     */
+    private List<AlarmLine> readAlarmLines() {
+        File propertiesFile = context.getPropertiesAssistant().getPropertiesFile();
+        if (propertiesFile != null && propertiesFile.isFile()) {
+            try (BufferedReader reader = Files.newBufferedReader(propertiesFile.toPath(), StandardCharsets.UTF_8)) {
+                return readAlarmLines(reader);
+            } catch (IOException e) {
+                context.getLogger().warn("Unable to read the properties file, using the loaded properties", e);
+            }
+        }
+
+        List<AlarmLine> alarmLines = new ArrayList<>();
+        Properties properties = context.getPropertiesAssistant().getProperties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.contains(AlarmActivator.ALARM_PREFIX)) {
+                alarmLines.add(new AlarmLine(-1, key, properties.getProperty(key)));
+            }
+        }
+        return alarmLines;
+    }
+
+    /**
+     * Reads the alarm lines in the properties format: comments and blank lines are skipped, key and value are
+     * separated by '=', ':' or whitespace and a line ending with a backslash is continued on the next line.
+     */
+    private List<AlarmLine> readAlarmLines(BufferedReader reader) throws IOException {
+        List<AlarmLine> alarmLines = new ArrayList<>();
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int startLineNumber = lineNumber;
+            String logicalLine = trimLeading(line);
+            if (logicalLine.isEmpty() || logicalLine.charAt(0) == '#' || logicalLine.charAt(0) == '!') {
+                continue;
+            }
+
+            while (endsWithContinuation(logicalLine)) {
+                String next = reader.readLine();
+                if (next == null) {
+                    break;
+                }
+                lineNumber++;
+                logicalLine = logicalLine.substring(0, logicalLine.length() - 1) + trimLeading(next);
+            }
+
+            int keyEnd = 0;
+            while (keyEnd < logicalLine.length() && "=: \t\f".indexOf(logicalLine.charAt(keyEnd)) < 0) {
+                keyEnd++;
+            }
+            String key = logicalLine.substring(0, keyEnd);
+            if (!key.contains(AlarmActivator.ALARM_PREFIX)) {
+                continue;
+            }
+
+            String value = trimLeading(logicalLine.substring(keyEnd));
+            if (!value.isEmpty() && (value.charAt(0) == '=' || value.charAt(0) == ':')) {
+                value = trimLeading(value.substring(1));
+            }
+            alarmLines.add(new AlarmLine(startLineNumber, key, value.trim()));
+        }
+        return alarmLines;
+    }
+
+    private static String trimLeading(String line) {
+        int start = 0;
+        while (start < line.length() && " \t\f".indexOf(line.charAt(start)) >= 0) {
+            start++;
+        }
+        return line.substring(start);
+    }
+
+    private static boolean endsWithContinuation(String line) {
+        int backslashes = 0;
+        for (int i = line.length() - 1; i >= 0 && line.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    /**
+     * An alarm line of the properties file
+     */
+    private static class AlarmLine {
+        private final int lineNumber;
+        private final String key;
+        private final String value;
+
+        AlarmLine(int lineNumber, String key, String value) {
+            this.lineNumber = lineNumber;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The result of compiling an alarm line, the settings are null if the line could not be parsed
+     */
+    private static class Compiled {
+        private final String name;
+        private final AlarmRepeatSettings settings;
+
+        Compiled(String name, AlarmRepeatSettings settings) {
+            this.name = name;
+            this.settings = settings;
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.addon.izouclock.TimeSource;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * AlarmTable is a compact, read-only table of alarms for large deployments, see
+ * {@link AlarmActivator#TABLE_THRESHOLD_PROPERTY}. Instead of one {@link AlarmRepeatSettings} object (with its own set
+ * of events) per alarm, every alarm is a row of four ints: the second of the week it goes off at, its flags, the index
+ * of its events in a table of event sets that is shared by all alarms and the hash of its settings (which the alarm
+ * state file is keyed by). Most alarms fire the same few events, so the event sets are stored only once.
+ * <p>
+ * The rows are sorted by their second of the week, so all alarms of a second (or of a range of seconds) are found
+ * with a binary search and no additional index. The int columns can be kept off-heap, in which case only the names
+ * of the alarms and the event sets stay on the heap.
+ * </p>
+ * <p>
+ * Only plain weekly alarms fit into a row, see {@link #canHold(AlarmRepeatSettings)}. Alarms with a recurrence rule,
+ * a millisecond or their own catch-up policy are kept as settings objects.
+ * </p>
+ */
+public class AlarmTable {
+    /**
+     * The flag of alarms that repeat every week
+     */
+    public static final int FLAG_REPEAT = 1;
+
+    private static final AlarmTable EMPTY = new Builder(0).build(false);
+
+    private final String[] names;
+    private final IntBuffer secondsOfWeek;
+    private final IntBuffer flags;
+    private final IntBuffer eventSets;
+    private final IntBuffer settingsHashes;
+    private final List<List<String>> eventSetTable;
+    private final boolean offHeap;
+
+    private AlarmTable(String[] names, IntBuffer secondsOfWeek, IntBuffer flags, IntBuffer eventSets,
+                       IntBuffer settingsHashes, List<List<String>> eventSetTable, boolean offHeap) {
+        this.names = names;
+        this.secondsOfWeek = secondsOfWeek;
+        this.flags = flags;
+        this.eventSets = eventSets;
+        this.settingsHashes = settingsHashes;
+        this.eventSetTable = eventSetTable;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Gets a table without alarms
+     *
+     * @return the empty table
+     */
+    public static AlarmTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a new AlarmTable with all the given alarms
+     *
+     * @param settingsMap the alarms (by name), all of them have to fit into the table
+     * @param offHeap true if the int columns should be kept outside of the heap
+     * @return the new AlarmTable
+     * @throws IllegalArgumentException if an alarm does not fit into the table
+     */
+    public static AlarmTable of(Map<String, AlarmRepeatSettings> settingsMap, boolean offHeap) {
+        Builder builder = new Builder(settingsMap.size());
+        for (Map.Entry<String, AlarmRepeatSettings> alarm : settingsMap.entrySet()) {
+            builder.add(alarm.getKey(), alarm.getValue());
+        }
+        return builder.build(offHeap);
+    }
+
+    /**
+     * Checks whether the alarm fits into a row of the table: it has to go off at a second of a single day every week,
+     * and use the default catch-up policy
+     *
+     * @param repeatSettings the settings of the alarm
+     * @return true if the alarm fits into the table, else false
+     */
+    public static boolean canHold(AlarmRepeatSettings repeatSettings) {
+        return repeatSettings.getRecurrenceRule() == null && !repeatSettings.isPrecise()
+                && repeatSettings.getCatchUpPolicy() == null;
+    }
+
+    /**
+     * Gets the number of alarms in the table
+     *
+     * @return the number of alarms
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Checks whether there are no alarms in the table
+     *
+     * @return true if the table is empty, else false
+     */
+    public boolean isEmpty() {
+        return names.length == 0;
+    }
+
+    /**
+     * Gets the names of all alarms, in the order of their rows
+     *
+     * @return the names of the alarms, the list can not be modified
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * Gets the name of the alarm in the given row
+     *
+     * @param row the row, between 0 and {@link #size()} (exclusive)
+     * @return the name of the alarm
+     */
+    public String getName(int row) {
+        return names[row];
+    }
+
+    /**
+     * Gets the second of the week (seconds since sunday at 00:00:00) the alarm in the given row goes off at
+     *
+     * @param row the row, between 0 and {@link #size()} (exclusive)
+     * @return the second of the week
+     */
+    public int getSecondOfWeek(int row) {
+        return secondsOfWeek.get(row);
+    }
+
+    /**
+     * Gets whether the alarm in the given row repeats every week
+     *
+     * @param row the row, between 0 and {@link #size()} (exclusive)
+     * @return true if the alarm repeats, else false
+     */
+    public boolean isRepeat(int row) {
+        return (flags.get(row) & FLAG_REPEAT) != 0;
+    }
+
+    /**
+     * Gets the events the alarm in the given row fires. The list is shared with all other alarms that fire the same
+     * events and can not be modified.
+     *
+     * @param row the row, between 0 and {@link #size()} (exclusive)
+     * @return the events of the alarm
+     */
+    public List<String> getEvents(int row) {
+        return eventSetTable.get(eventSets.get(row));
+    }
+
+    /**
+     * Gets the hash of the settings of the alarm in the given row, the same as {@link AlarmRepeatSettings#hashCode()}
+     * of the settings it was added with
+     *
+     * @param row the row, between 0 and {@link #size()} (exclusive)
+     * @return the hash of the settings
+     */
+    public int getSettingsHash(int row) {
+        return settingsHashes.get(row);
+    }
+
+    /**
+     * Gets the number of distinct event sets of all alarms
+     *
+     * @return the number of event sets
+     */
+    public int getEventSetCount() {
+        return eventSetTable.size();
+    }
+
+    /**
+     * Gets whether the int columns of the table are kept outside of the heap
+     *
+     * @return true if the columns are off-heap, else false
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Gets the number of bytes the int columns of the table take up, on or off the heap
+     *
+     * @return the size of the columns in bytes
+     */
+    public long getColumnBytes() {
+        return 4L * Integer.BYTES * names.length;
+    }
+
+    /**
+     * Calls the consumer with the row of every alarm that goes off in the given range of seconds of the week, in the
+     * order of their second of the week. The range does not wrap around the end of the week.
+     *
+     * @param fromSecondOfWeek the first second of the week (inclusive)
+     * @param toSecondOfWeek the last second of the week (inclusive)
+     * @param consumer the consumer of the rows
+     * @return the number of alarms in the range
+     */
+    public int forEachInRange(int fromSecondOfWeek, int toSecondOfWeek, IntConsumer consumer) {
+        int count = 0;
+        for (int row = firstRowAt(fromSecondOfWeek);
+             row < names.length && secondsOfWeek.get(row) <= toSecondOfWeek; row++) {
+            consumer.accept(row);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Calls the consumer with the row of every alarm that goes off at the given time, give or take the trigger buffer
+     * (see {@link AlarmActivator#TRIGGER_BUFFER}). Like in {@link AlarmActivator#checkActivity(int, int, int, int)},
+     * the buffer does not reach into the minute before or after.
+     *
+     * @param day the current day
+     * @param hours the current hour
+     * @param minutes the current minute
+     * @param seconds the current second
+     * @param consumer the consumer of the rows
+     * @return the number of alarms that should be activated
+     */
+    public int lookup(int day, int hours, int minutes, int seconds, IntConsumer consumer) {
+        int minute = TimeSource.secondOfWeek(day, hours, minutes, 0);
+        return forEachInRange(minute + Math.max(0, seconds - AlarmActivator.TRIGGER_BUFFER),
+                minute + Math.min(59, seconds + AlarmActivator.TRIGGER_BUFFER), consumer);
+    }
+
+    /**
+     * Adds all alarms that go off at the given time, give or take the trigger buffer, to the result, like
+     * {@link #lookup(int, int, int, int, IntConsumer)} but without creating garbage
+     *
+     * @param day the current day
+     * @param hours the current hour
+     * @param minutes the current minute
+     * @param seconds the current second
+     * @param result the object to add the alarms to
+     */
+    void lookup(int day, int hours, int minutes, int seconds, ActiveAlarms result) {
+        int minute = TimeSource.secondOfWeek(day, hours, minutes, 0);
+        int to = minute + Math.min(59, seconds + AlarmActivator.TRIGGER_BUFFER);
+        for (int row = firstRowAt(minute + Math.max(0, seconds - AlarmActivator.TRIGGER_BUFFER));
+             row < names.length && secondsOfWeek.get(row) <= to; row++) {
+            result.add(names[row], isRepeat(row), getEvents(row));
+        }
+    }
+
+    /**
+     * Finds the first row with a second of the week at or after the given one. The following rows go off in the order
+     * of their second of the week.
+     *
+     * @param secondOfWeek the second of the week
+     * @return the row, or {@link #size()} if no alarm goes off at or after the second of the week
+     */
+    public int firstRowAt(int secondOfWeek) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (secondsOfWeek.get(middle) < secondOfWeek) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Collects alarms for a new {@link AlarmTable}, without creating an object per alarm
+     */
+    public static class Builder {
+        private String[] names;
+        private int[] secondsOfWeek;
+        private int[] flags;
+        private int[] eventSets;
+        private int[] settingsHashes;
+        private int size;
+        private final List<List<String>> eventSetTable;
+        private final Map<Set<String>, Integer> eventSetIndex;
+
+        /**
+         * Creates a new, empty Builder
+         *
+         * @param expectedAlarms the number of alarms that will (probably) be added
+         */
+        public Builder(int expectedAlarms) {
+            int capacity = Math.max(expectedAlarms, 4);
+            names = new String[capacity];
+            secondsOfWeek = new int[capacity];
+            flags = new int[capacity];
+            eventSets = new int[capacity];
+            settingsHashes = new int[capacity];
+            eventSetTable = new ArrayList<>();
+            eventSetIndex = new HashMap<>();
+        }
+
+        /**
+         * Adds an alarm
+         *
+         * @param name the name of the alarm
+         * @param repeatSettings the settings of the alarm
+         * @return this builder
+         * @throws IllegalArgumentException if the alarm does not fit into the table, see
+         *                                  {@link AlarmTable#canHold(AlarmRepeatSettings)}
+         */
+        public Builder add(String name, AlarmRepeatSettings repeatSettings) {
+            if (!canHold(repeatSettings)) {
+                throw new IllegalArgumentException("Alarm " + name + " does not fit into the alarm table");
+            }
+            int secondOfWeek = TimeSource.secondOfWeek(repeatSettings.getDay(), repeatSettings.getHours(),
+                    repeatSettings.getMinutes(), repeatSettings.getSeconds());
+            return add(name, secondOfWeek, repeatSettings.isState(), repeatSettings.getEventsToFire(),
+                    repeatSettings.hashCode());
+        }
+
+        /**
+         * Adds an alarm
+         *
+         * @param name the name of the alarm
+         * @param secondOfWeek the second of the week (seconds since sunday at 00:00:00) the alarm goes off at
+         * @param repeat true if the alarm repeats every week, else false
+         * @param events the events the alarm fires
+         * @param settingsHash the hash of the settings of the alarm
+         * @return this builder
+         */
+        public Builder add(String name, int secondOfWeek, boolean repeat, Collection<String> events,
+                           int settingsHash) {
+            if (size == names.length) {
+                int capacity = size + (size >> 1);
+                names = Arrays.copyOf(names, capacity);
+                secondsOfWeek = Arrays.copyOf(secondsOfWeek, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                eventSets = Arrays.copyOf(eventSets, capacity);
+                settingsHashes = Arrays.copyOf(settingsHashes, capacity);
+            }
+            names[size] = name;
+            secondsOfWeek[size] = secondOfWeek;
+            flags[size] = repeat ? FLAG_REPEAT : 0;
+            eventSets[size] = eventSetOf(events);
+            settingsHashes[size] = settingsHash;
+            size++;
+            return this;
+        }
+
+        /**
+         * Creates the table. The builder can not be used afterwards.
+         *
+         * @param offHeap true if the int columns should be kept outside of the heap
+         * @return the new AlarmTable
+         */
+        public AlarmTable build(boolean offHeap) {
+            // sort the rows by their second of the week, the row number is kept in the lower half of the sort key
+            long[] order = new long[size];
+            for (int row = 0; row < size; row++) {
+                order[row] = ((long) secondsOfWeek[row] << 32) | row;
+            }
+            Arrays.sort(order);
+
+            String[] sortedNames = new String[size];
+            IntBuffer sortedSecondsOfWeek = allocate(size, offHeap);
+            IntBuffer sortedFlags = allocate(size, offHeap);
+            IntBuffer sortedEventSets = allocate(size, offHeap);
+            IntBuffer sortedSettingsHashes = allocate(size, offHeap);
+            for (int i = 0; i < size; i++) {
+                int row = (int) order[i];
+                sortedNames[i] = names[row];
+                sortedSecondsOfWeek.put(i, secondsOfWeek[row]);
+                sortedFlags.put(i, flags[row]);
+                sortedEventSets.put(i, eventSets[row]);
+                sortedSettingsHashes.put(i, settingsHashes[row]);
+            }
+            names = null;
+            secondsOfWeek = null;
+            flags = null;
+            eventSets = null;
+            settingsHashes = null;
+            return new AlarmTable(sortedNames, sortedSecondsOfWeek, sortedFlags, sortedEventSets, sortedSettingsHashes,
+                    Collections.unmodifiableList(new ArrayList<>(eventSetTable)), offHeap);
+        }
+
+        /**
+         * Gets the index of the event set in the shared table, and adds it first if it is not in there yet
+         */
+        private int eventSetOf(Collection<String> events) {
+            Set<String> key = new LinkedHashSet<>(events);
+            Integer index = eventSetIndex.get(key);
+            if (index == null) {
+                index = eventSetTable.size();
+                eventSetTable.add(Collections.unmodifiableList(new ArrayList<>(key)));
+                eventSetIndex.put(key, index);
+            }
+            return index;
+        }
+
+        private static IntBuffer allocate(int size, boolean offHeap) {
+            if (offHeap) {
+                return ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+            return IntBuffer.allocate(size);
+        }
+    }
+}
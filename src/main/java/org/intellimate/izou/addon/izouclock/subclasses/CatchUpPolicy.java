@@ -0,0 +1,96 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+/**
+ * A CatchUpPolicy decides what happens with an alarm that missed its time, because the addOn was not running or the
+ * host was suspended when it should have gone off. The policy can be:
+ * <ul>
+ *     <li>{@code skip}: the missed alarm does not go off, it waits for its next time</li>
+ *     <li>{@code late}: the missed alarm goes off once as soon as possible, no matter how late it is (an alarm that
+ *     missed its time several times still goes off only once)</li>
+ *     <li>a number of seconds, for example {@code 300}: the missed alarm goes off once if it is at most that late,
+ *     else it is skipped</li>
+ * </ul>
+ * <p>
+ * An alarm that does not repeat and is skipped counts as gone off, so it does not go off a week later.
+ * </p>
+ */
+public class CatchUpPolicy {
+    /**
+     * The prefix of the part of the alarm settings that sets the policy of the alarm, for example
+     * {@code catchup:late}
+     */
+    public static final String SETTINGS_PREFIX = "catchup:";
+
+    /**
+     * Missed alarms don't go off
+     */
+    public static final CatchUpPolicy SKIP = new CatchUpPolicy(0);
+
+    /**
+     * Missed alarms go off once, no matter how late they are
+     */
+    public static final CatchUpPolicy FIRE_ONCE_LATE = new CatchUpPolicy(Long.MAX_VALUE);
+
+    private final long maxLateness;
+
+    private CatchUpPolicy(long maxLateness) {
+        this.maxLateness = maxLateness;
+    }
+
+    /**
+     * Parses a policy
+     *
+     * @param policy the policy: {@code skip}, {@code late} or the number of seconds an alarm may be late
+     * @return the policy
+     * @throws IllegalStateException if the policy is not valid
+     */
+    public static CatchUpPolicy parse(String policy) throws IllegalStateException {
+        String value = policy.trim().toLowerCase();
+        switch (value) {
+            case "skip":
+                return SKIP;
+            case "late":
+                return FIRE_ONCE_LATE;
+        }
+        try {
+            long seconds = Long.parseLong(value);
+            if (seconds < 0) {
+                throw new IllegalStateException("the seconds of a catch-up policy can not be negative");
+            }
+            return seconds == 0 ? SKIP : new CatchUpPolicy(seconds * 1000);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(policy + " is not a catch-up policy (skip, late or seconds)", e);
+        }
+    }
+
+    /**
+     * Checks whether an alarm that missed its time by the given lateness goes off
+     *
+     * @param lateness how late the alarm is, in milliseconds
+     * @return true if the alarm goes off, false if it is skipped
+     */
+    public boolean allows(long lateness) {
+        return lateness <= maxLateness && maxLateness > 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CatchUpPolicy)) return false;
+
+        return maxLateness == ((CatchUpPolicy) o).maxLateness;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(maxLateness);
+    }
+
+    @Override
+    public String toString() {
+        if (maxLateness == 0) {
+            return "skip";
+        }
+        return maxLateness == Long.MAX_VALUE ? "late" : String.valueOf(maxLateness / 1000);
+    }
+}
@@ -0,0 +1,76 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EventIds resolves the event IDs of the alarms and keeps the event lists of all alarms.
+ * <p>
+ * Resolving an event ID through the event properties is cached, so every event name of the settings is looked up
+ * only once, no matter how many alarms use it. The cache has to be invalidated when the event properties change.
+ * </p>
+ * <p>
+ * The events of an alarm are interned: all alarms that fire the same events share one immutable list, so the lists
+ * can be handed out (when scheduling or firing an alarm) without copying them.
+ * </p>
+ */
+public class EventIds {
+    /**
+     * The event that is fired if an alarm does not name any events, or if an event can not be resolved
+     */
+    public static final String DEFAULT_EVENT = "izou.alarm";
+
+    private static final ConcurrentHashMap<String, String> resolvedIds = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Set<String>, List<String>> internedLists = new ConcurrentHashMap<>();
+
+    private EventIds() {
+    }
+
+    /**
+     * Resolves the event ID of an event name through the event properties of the addOn
+     *
+     * @param context the context of the addOn
+     * @param eventName the event name, as written in the settings of an alarm
+     * @return the event ID, or {@link #DEFAULT_EVENT} if the event name is unknown
+     */
+    public static String resolve(Context context, String eventName) {
+        return resolvedIds.computeIfAbsent(eventName, name -> {
+            String eventID = context.getPropertiesAssistant().getEventPropertiesAssistant().getEventID(name);
+            return eventID == null ? DEFAULT_EVENT : eventID;
+        });
+    }
+
+    /**
+     * Gets the shared, immutable list of the given events
+     *
+     * @param events the events, in the order they should be fired in
+     * @return the shared list of the events
+     */
+    public static List<String> intern(Set<String> events) {
+        List<String> interned = internedLists.get(events);
+        if (interned != null) {
+            return interned;
+        }
+        Set<String> key = Collections.unmodifiableSet(new LinkedHashSet<>(events));
+        return internedLists.computeIfAbsent(key, set -> Collections.unmodifiableList(new ArrayList<>(set)));
+    }
+
+    /**
+     * Forgets all resolved event IDs, so that they are resolved again the next time they are used. Has to be called
+     * whenever the event properties change. The interned lists are kept, they don't depend on the event properties.
+     */
+    public static void invalidate() {
+        resolvedIds.clear();
+    }
+
+    /**
+     * Gets the number of distinct event lists that are shared by the alarms
+     *
+     * @return the number of interned event lists
+     */
+    public static int getInternedCount() {
+        return internedLists.size();
+    }
+}
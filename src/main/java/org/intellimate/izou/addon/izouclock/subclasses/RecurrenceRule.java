@@ -0,0 +1,268 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A RecurrenceRule is the compiled form of the day field of an alarm that goes off on more than a single day of the
+ * week. The day field can be:
+ * <ul>
+ *     <li>a list of days, separated by commas, for example {@code monday,wednesday,friday}. Next to the days of the
+ *     week, the list may contain {@code weekdays} (monday - friday), {@code weekend} (saturday and sunday) and
+ *     {@code daily}.</li>
+ *     <li>a list of days that only goes off every N weeks, counted from the week of an anchor date, for example
+ *     {@code weekdays/2w@2026-10-19}</li>
+ *     <li>every N days, starting with an anchor date, for example {@code every3d@2026-10-19}</li>
+ *     <li>a day of the month, for example {@code monthday15}. Months without that day are skipped.</li>
+ * </ul>
+ * <p>
+ * All rules work on local epoch seconds (see {@link org.intellimate.izou.addon.izouclock.TimeSource}). Finding the
+ * next time a rule goes off is a constant-time calculation, so an alarm with a rule needs just one pending timer,
+ * which is scheduled again for the next time after it went off.
+ * </p>
+ */
+public class RecurrenceRule {
+    private static final int SECONDS_IN_DAY = 24 * 60 * 60;
+    private static final String[] DAYS = {"sunday", "monday", "tuesday", "wednesday", "thursday", "friday",
+            "saturday"};
+    private static final int WEEKDAYS = 0b0111110;
+    private static final int WEEKEND = 0b1000001;
+    private static final int DAILY = 0b1111111;
+
+    /**
+     * The sunday before the 1st of January 1970, as epoch day
+     */
+    private static final long EPOCH_WEEK_START = -4;
+
+    private static final int WEEKLY = 0;
+    private static final int EVERY_N_DAYS = 1;
+    private static final int MONTH_DAY = 2;
+
+    private final int kind;
+    private final int dayMask;
+    private final int interval;
+    private final long anchorDay;
+    private final int secondOfDay;
+
+    private RecurrenceRule(int kind, int dayMask, int interval, long anchorDay, int secondOfDay) {
+        this.kind = kind;
+        this.dayMask = dayMask;
+        this.interval = interval;
+        this.anchorDay = anchorDay;
+        this.secondOfDay = secondOfDay;
+    }
+
+    /**
+     * Checks whether the day field of an alarm is a single day of the week (the classic format, which needs no rule)
+     *
+     * @param dayField the day field of the alarm, in lower case
+     * @return true if the day field is a single day of the week, else false
+     */
+    public static boolean isSingleDay(String dayField) {
+        return dayIndex(dayField) >= 0;
+    }
+
+    /**
+     * Compiles the day field of an alarm into a RecurrenceRule
+     *
+     * @param dayField the day field of the alarm, in lower case
+     * @param hours the hour the alarm goes off at
+     * @param minutes the minute the alarm goes off at
+     * @param seconds the second the alarm goes off at
+     * @return the compiled rule
+     * @throws IllegalStateException if the day field is not a valid rule
+     */
+    public static RecurrenceRule compile(String dayField, int hours, int minutes, int seconds)
+            throws IllegalStateException {
+        int secondOfDay = hours * 60 * 60 + minutes * 60 + seconds;
+        String rule = dayField.trim();
+        try {
+            if (rule.startsWith("monthday")) {
+                int monthDay = Integer.parseInt(rule.substring("monthday".length()));
+                if (monthDay < 1 || monthDay > 31) {
+                    throw new IllegalStateException("the day of the month has to be between 1 and 31");
+                }
+                return new RecurrenceRule(MONTH_DAY, 0, monthDay, 0, secondOfDay);
+            }
+
+            if (rule.startsWith("every")) {
+                int anchor = rule.indexOf('@');
+                if (anchor < 0 || !rule.substring(0, anchor).endsWith("d")) {
+                    throw new IllegalStateException("every N days has to be written as every<N>d@<yyyy-mm-dd>");
+                }
+                int days = positive(rule.substring("every".length(), anchor - 1));
+                return new RecurrenceRule(EVERY_N_DAYS, 0, days, parseDate(rule.substring(anchor + 1)), secondOfDay);
+            }
+
+            int weeks = 1;
+            long anchorWeekStart = EPOCH_WEEK_START;
+            int intervalStart = rule.indexOf('/');
+            if (intervalStart >= 0) {
+                int anchor = rule.indexOf('@', intervalStart);
+                if (anchor < 0 || !rule.substring(intervalStart, anchor).endsWith("w")) {
+                    throw new IllegalStateException("every N weeks has to be written as <days>/<N>w@<yyyy-mm-dd>");
+                }
+                weeks = positive(rule.substring(intervalStart + 1, anchor - 1));
+                long anchorDay = parseDate(rule.substring(anchor + 1));
+                anchorWeekStart = anchorDay - dayOfWeek(anchorDay);
+                rule = rule.substring(0, intervalStart);
+            }
+            return new RecurrenceRule(WEEKLY, parseDays(rule), weeks, anchorWeekStart, secondOfDay);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(dayField + " is not a valid recurrence rule", e);
+        }
+    }
+
+    /**
+     * Gets the next time the rule goes off, strictly after the given time
+     *
+     * @param localEpochSecond the time, as local epoch second
+     * @return the next time the rule goes off, as local epoch second
+     */
+    public long nextFireAfter(long localEpochSecond) {
+        // the first day on which the alarm goes off after the given time, if the rule allows that day
+        long firstDay = Math.floorDiv(localEpochSecond - secondOfDay, SECONDS_IN_DAY) + 1;
+        long fireDay;
+        switch (kind) {
+            case EVERY_N_DAYS:
+                fireDay = firstDay <= anchorDay
+                        ? anchorDay
+                        : anchorDay + (firstDay - anchorDay + interval - 1) / interval * interval;
+                break;
+            case MONTH_DAY:
+                fireDay = nextMonthDay(firstDay);
+                break;
+            default:
+                fireDay = nextWeeklyDay(firstDay);
+        }
+        return fireDay * SECONDS_IN_DAY + secondOfDay;
+    }
+
+    /**
+     * Gets the days of the week the rule goes off on, as bit mask (bit 0 is sunday, bit 6 is saturday). Rules that are
+     * not based on the days of the week return 0.
+     *
+     * @return the days of the week of the rule
+     */
+    public int getDayMask() {
+        return dayMask;
+    }
+
+    /**
+     * Gets the time of the day the rule goes off at
+     *
+     * @return the seconds since 00:00:00
+     */
+    public int getSecondOfDay() {
+        return secondOfDay;
+    }
+
+    private long nextWeeklyDay(long day) {
+        if (day < anchorDay) {
+            return anchorDay + Integer.numberOfTrailingZeros(dayMask);
+        }
+        int dayOfWeek = dayOfWeek(day);
+        long weekStart = day - dayOfWeek;
+        long week = Math.floorMod((weekStart - anchorDay) / 7, interval);
+        if (week == 0) {
+            int remainingDays = dayMask & (DAILY << dayOfWeek);
+            if (remainingDays != 0) {
+                return weekStart + Integer.numberOfTrailingZeros(remainingDays);
+            }
+        }
+        return weekStart + 7 * (interval - week) + Integer.numberOfTrailingZeros(dayMask);
+    }
+
+    private long nextMonthDay(long day) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        LocalDate month = date.withDayOfMonth(1);
+        if (date.getDayOfMonth() > interval) {
+            month = month.plusMonths(1);
+        }
+        // no month is skipped twice in a row, so this loops at most twice
+        while (month.lengthOfMonth() < interval) {
+            month = month.plusMonths(1);
+        }
+        return month.withDayOfMonth(interval).toEpochDay();
+    }
+
+    /**
+     * Gets the day of the week of an epoch day, 0 is sunday
+     */
+    private static int dayOfWeek(long epochDay) {
+        return (int) Math.floorMod(epochDay - EPOCH_WEEK_START, 7);
+    }
+
+    private static int dayIndex(String day) {
+        for (int i = 0; i < DAYS.length; i++) {
+            if (DAYS[i].equals(day)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseDays(String days) {
+        int mask = 0;
+        for (String day : days.split(",")) {
+            day = day.trim();
+            switch (day) {
+                case "weekdays":
+                    mask |= WEEKDAYS;
+                    break;
+                case "weekend":
+                    mask |= WEEKEND;
+                    break;
+                case "daily":
+                    mask |= DAILY;
+                    break;
+                default:
+                    int index = dayIndex(day);
+                    if (index < 0) {
+                        throw new IllegalStateException(day + " is not a day of the week");
+                    }
+                    mask |= 1 << index;
+            }
+        }
+        return mask;
+    }
+
+    private static int positive(String value) {
+        int number = Integer.parseInt(value);
+        if (number < 1) {
+            throw new IllegalStateException("the interval has to be at least 1");
+        }
+        return number;
+    }
+
+    private static long parseDate(String date) {
+        try {
+            return LocalDate.parse(date).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new IllegalStateException(date + " is not a date (yyyy-mm-dd)", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecurrenceRule)) return false;
+
+        RecurrenceRule that = (RecurrenceRule) o;
+        return kind == that.kind
+                && dayMask == that.dayMask
+                && interval == that.interval
+                && anchorDay == that.anchorDay
+                && secondOfDay == that.secondOfDay;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = kind;
+        result = 31 * result + dayMask;
+        result = 31 * result + interval;
+        result = 31 * result + Long.hashCode(anchorDay);
+        result = 31 * result + secondOfDay;
+        return result;
+    }
+}
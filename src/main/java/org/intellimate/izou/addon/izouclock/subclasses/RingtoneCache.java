@@ -0,0 +1,150 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RingtoneCache holds everything that is needed to ring an alarm: the ringtone (as an {@link AlarmOutput}), the
+ * audio player and the presence settings. They are parsed from the properties once and then only again when the
+ * properties change, so ringing an alarm does not have to touch the properties at all.
+ */
+public class RingtoneCache {
+    private final Context context;
+    private final String defaultPlayer;
+    private final AtomicLong propertiesVersion;
+    private volatile Ringtone ringtone;
+
+    /**
+     * Creates a new RingtoneCache and registers it to be rebuilt every time the properties change
+     *
+     * @param context the context of the addOn
+     * @param defaultPlayer the ID of the default audio player
+     */
+    public RingtoneCache(Context context, String defaultPlayer) {
+        this.context = context;
+        this.defaultPlayer = defaultPlayer;
+        this.propertiesVersion = new AtomicLong(0);
+        context.getPropertiesAssistant().registerUpdateListener(propertiesAssistant -> invalidate());
+    }
+
+    /**
+     * Gets the ringtone of the current version of the properties. It is only built if the properties changed since
+     * the last time.
+     *
+     * @return the ringtone of the current version of the properties
+     */
+    public Ringtone getRingtone() {
+        Ringtone current = ringtone;
+        long version = propertiesVersion.get();
+        if (current == null || current.version != version) {
+            current = new Ringtone(version);
+            ringtone = current;
+        }
+        return current;
+    }
+
+    /**
+     * Marks the cached ringtone as outdated and builds the ringtone of the new properties version right away
+     */
+    public void invalidate() {
+        propertiesVersion.incrementAndGet();
+        getRingtone();
+    }
+
+    /**
+     * Gets the version of the properties the cache is at. It is increased every time the properties change.
+     *
+     * @return the version of the properties
+     */
+    public long getPropertiesVersion() {
+        return propertiesVersion.get();
+    }
+
+    /**
+     * A ringtone together with the settings of how it should be played, for a certain version of the properties
+     */
+    public class Ringtone {
+        private final long version;
+        private final String audioPlayerID;
+        private final AlarmOutput alarmOutput;
+        private final boolean fireUntilPresent;
+        private final boolean fireUntilAbsent;
+        private final boolean strictPresence;
+        private final int soundPlayCounter;
+
+        private Ringtone(long version) {
+            this.version = version;
+
+            Properties properties = context.getPropertiesAssistant().getProperties();
+            audioPlayerID = properties.getProperty("audioPlayerID");
+            alarmOutput = new AlarmOutput(context, defaultPlayer.equals(audioPlayerID));
+            fireUntilPresent = Boolean.parseBoolean(properties.getProperty("fireUntilPresent"));
+            fireUntilAbsent = Boolean.parseBoolean(properties.getProperty("fireUntilAbsent"));
+            strictPresence = Boolean.parseBoolean(properties.getProperty("strictPresence"));
+
+            int soundPlayCounterTemp = 10;
+            try {
+                soundPlayCounterTemp = Integer.parseInt(properties.getProperty("soundPlayCounter"));
+            } catch (NumberFormatException e) {
+                context.getLogger().error("Unable to convert soundPlayCounter to an integer, setting to 10");
+            }
+            soundPlayCounter = soundPlayCounterTemp;
+        }
+
+        /**
+         * Gets the ID of the audio player that should play the ringtone
+         *
+         * @return the ID of the audio player
+         */
+        public String getAudioPlayerID() {
+            return audioPlayerID;
+        }
+
+        /**
+         * Gets the alarm output that contains the ringtone
+         *
+         * @return the alarm output
+         */
+        public AlarmOutput getAlarmOutput() {
+            return alarmOutput;
+        }
+
+        /**
+         * Gets whether the alarm should ring until the user is present
+         *
+         * @return true if the alarm should ring until the user is present, else false
+         */
+        public boolean isFireUntilPresent() {
+            return fireUntilPresent;
+        }
+
+        /**
+         * Gets whether the alarm should ring until the user is absent
+         *
+         * @return true if the alarm should ring until the user is absent, else false
+         */
+        public boolean isFireUntilAbsent() {
+            return fireUntilAbsent;
+        }
+
+        /**
+         * Gets whether it should be very likely that the user is present, or whether a rough guess is enough
+         *
+         * @return true if it should be very likely that the user is present, else false
+         */
+        public boolean isStrictPresence() {
+            return strictPresence;
+        }
+
+        /**
+         * Gets the number of times the ringtone should be played
+         *
+         * @return the number of times the ringtone should be played
+         */
+        public int getSoundPlayCounter() {
+            return soundPlayCounter;
+        }
+    }
+}
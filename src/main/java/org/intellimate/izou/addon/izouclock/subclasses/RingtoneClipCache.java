@@ -0,0 +1,331 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The RingtoneClipCache cuts the part of a ringtone that should be played (from the start point, for the duration set
+ * in the properties file) out of the MP3 file ahead of time, and stores it as a small clip. The audio player then only
+ * has to open the clip instead of opening, decoding and seeking through the whole file every time the alarm rings.
+ * <p>
+ * Clips are cut at MP3 frame boundaries. A clip is identified by the size and modification time of its ringtone and
+ * by the start point and duration, so changing any of them creates a new clip and removes the old one. A clip that was
+ * cut before the addOn restarted is used again, only its frame headers are read to get its duration. Files that are
+ * not MPEG layer III files are not cut, the player keeps using the original file for them.
+ * </p>
+ */
+public class RingtoneClipCache {
+    private static final String CLIP_DIRECTORY = "clips";
+    private static final int[][] BITRATES = {
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},   // MPEG 1
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}        // MPEG 2 and 2.5
+    };
+    private static final int[] SAMPLE_RATES = {44100, 48000, 32000};
+
+    private final Context context;
+    private final Path clipDirectory;
+    private final ConcurrentHashMap<String, Clip> clips;
+
+    /**
+     * Creates a new RingtoneClipCache
+     *
+     * @param context the context of the addOn
+     * @param dataDirectory the directory the ringtones are in, the clips are stored in a sub directory of it
+     */
+    public RingtoneClipCache(Context context, Path dataDirectory) {
+        this.context = context;
+        this.clipDirectory = dataDirectory.resolve(CLIP_DIRECTORY);
+        this.clips = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Cuts clips for all MP3 ringtones in the directory, so that they are ready when an alarm rings
+     *
+     * @param ringtoneDirectory the directory with the ringtones
+     * @param startPoint the start point of the clips, in milliseconds
+     * @param duration the duration of the clips, in milliseconds
+     */
+    public void warm(Path ringtoneDirectory, int startPoint, int duration) {
+        File[] ringtones = ringtoneDirectory.toFile().listFiles((dir, name) -> name.toLowerCase().endsWith(".mp3"));
+        if (ringtones == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        for (File ringtone : ringtones) {
+            getClip(ringtone.toPath(), startPoint, duration);
+        }
+        context.getLogger().debug("Prepared " + ringtones.length + " ringtone clips in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    /**
+     * Gets the clip of the ringtone from the start point for the given duration, and cuts it if it does not exist yet
+     *
+     * @param ringtone the ringtone file
+     * @param startPoint the start point of the clip, in milliseconds
+     * @param duration the duration of the clip, in milliseconds
+     * @return the clip, or an empty optional if the ringtone could not be cut
+     */
+    public Optional<Clip> getClip(Path ringtone, int startPoint, int duration) {
+        if (duration <= 0 || startPoint < 0 || !Files.isRegularFile(ringtone)) {
+            return Optional.empty();
+        }
+
+        String key;
+        try {
+            key = ringtone.getFileName() + "_" + startPoint + "_" + duration + "_" + Files.size(ringtone) + "_"
+                    + Files.getLastModifiedTime(ringtone).toMillis();
+        } catch (IOException e) {
+            context.getLogger().warn("Unable to read ringtone " + ringtone, e);
+            return Optional.empty();
+        }
+
+        Clip clip = clips.get(key);
+        if (clip != null && Files.isRegularFile(clip.getPath())) {
+            return Optional.of(clip);
+        }
+
+        clip = load(key, duration);
+        if (clip == null) {
+            try {
+                clip = cut(ringtone, key, startPoint, duration);
+            } catch (IOException e) {
+                context.getLogger().warn("Unable to cut a clip out of ringtone " + ringtone, e);
+                return Optional.empty();
+            }
+            if (clip == null) {
+                return Optional.empty();
+            }
+            removeOutdatedClips(ringtone, key);
+        }
+
+        clips.put(key, clip);
+        return Optional.of(clip);
+    }
+
+    /**
+     * Loads a clip that was already cut, for example before the addOn was restarted. Clips are moved into place only
+     * once they are complete, so an existing clip can be used as it is.
+     *
+     * @return the clip, or null if there is no clip with the key
+     */
+    private Clip load(String key, int duration) {
+        Path clipPath = clipDirectory.resolve(key + ".mp3");
+        if (!Files.isRegularFile(clipPath)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(clipPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            long time = 0;
+            int position = 0;
+            while (position + 4 <= buffer.limit()) {
+                int frameLength = frameLength(buffer, position);
+                if (frameLength <= 0) {
+                    break;
+                }
+                time += frameDuration(buffer, position);
+                position += frameLength;
+            }
+            if (time == 0) {
+                return null;
+            }
+            return new Clip(clipPath, (int) Math.min(duration, time / 1000));
+        } catch (IOException e) {
+            context.getLogger().warn("Unable to read ringtone clip " + clipPath + ", cutting it again", e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes the clips of the ringtone that were cut with other settings or from an older version of the file
+     */
+    private void removeOutdatedClips(Path ringtone, String currentKey) {
+        String prefix = ringtone.getFileName() + "_";
+        clips.keySet().removeIf(key -> key.startsWith(prefix) && !key.equals(currentKey));
+
+        File[] clipFiles = clipDirectory.toFile().listFiles((dir, name) -> name.startsWith(prefix)
+                && !name.equals(currentKey + ".mp3"));
+        if (clipFiles != null) {
+            for (File clipFile : clipFiles) {
+                if (!clipFile.delete()) {
+                    context.getLogger().warn("Unable to delete outdated ringtone clip " + clipFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cuts all frames that start between the start point and the end point out of the ringtone
+     *
+     * @return the clip, or null if the ringtone is not an MPEG layer III file
+     */
+    private Clip cut(Path ringtone, String key, int startPoint, int duration) throws IOException {
+        Path clipPath = clipDirectory.resolve(key + ".mp3");
+        long endPoint = (long) startPoint + duration;
+
+        try (FileChannel source = FileChannel.open(ringtone, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = source.map(FileChannel.MapMode.READ_ONLY, 0, source.size());
+            int position = skipId3Tag(buffer);
+
+            // time is counted in microseconds, so rounding does not add up over thousands of frames
+            long time = 0;
+            long clipStartTime = 0;
+            int clipStart = -1;
+            int clipEnd = -1;
+            boolean firstFrame = true;
+            while (position + 4 <= buffer.limit() && time < endPoint * 1000) {
+                int frameLength = frameLength(buffer, position);
+                if (frameLength <= 0 || position + frameLength > buffer.limit()) {
+                    // not (or no longer) a complete MPEG layer III frame
+                    break;
+                }
+
+                // the first frame of a VBR file is an info frame without audio
+                if (firstFrame) {
+                    firstFrame = false;
+                    if (isInfoFrame(buffer, position, frameLength)) {
+                        position += frameLength;
+                        continue;
+                    }
+                }
+
+                if (clipStart < 0 && time >= startPoint * 1000L) {
+                    clipStart = position;
+                    clipStartTime = time;
+                }
+                time += frameDuration(buffer, position);
+                position += frameLength;
+                if (clipStart >= 0) {
+                    clipEnd = position;
+                }
+            }
+
+            if (clipStart < 0 || clipEnd <= clipStart) {
+                return null;
+            }
+
+            Files.createDirectories(clipDirectory);
+            Path tempPath = clipDirectory.resolve(key + ".tmp");
+            try (FileChannel target = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer frames = buffer.duplicate();
+                frames.position(clipStart);
+                frames.limit(clipEnd);
+                while (frames.hasRemaining()) {
+                    target.write(frames);
+                }
+            }
+            Files.move(tempPath, clipPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long clipDuration = Math.min(duration, (time - clipStartTime) / 1000);
+            return new Clip(clipPath, (int) clipDuration);
+        }
+    }
+
+    private static int skipId3Tag(ByteBuffer buffer) {
+        if (buffer.limit() < 10 || buffer.get(0) != 'I' || buffer.get(1) != 'D' || buffer.get(2) != '3') {
+            return 0;
+        }
+        int size = (buffer.get(6) & 0x7F) << 21 | (buffer.get(7) & 0x7F) << 14 | (buffer.get(8) & 0x7F) << 7
+                | (buffer.get(9) & 0x7F);
+        boolean footer = (buffer.get(5) & 0x10) != 0;
+        return 10 + size + (footer ? 10 : 0);
+    }
+
+    /**
+     * Gets the length of the MPEG layer III frame at the position in bytes, or -1 if there is no such frame
+     */
+    private static int frameLength(ByteBuffer buffer, int position) {
+        int b1 = buffer.get(position) & 0xFF;
+        int b2 = buffer.get(position + 1) & 0xFF;
+        int b3 = buffer.get(position + 2) & 0xFF;
+        int version = (b2 >> 3) & 0x3;
+        int layer = (b2 >> 1) & 0x3;
+        int bitrateIndex = (b3 >> 4) & 0xF;
+        int sampleRateIndex = (b3 >> 2) & 0x3;
+        if (b1 != 0xFF || (b2 & 0xE0) != 0xE0 || version == 1 || layer != 1 || bitrateIndex == 0
+                || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return -1;
+        }
+
+        boolean mpeg1 = version == 3;
+        int bitrate = BITRATES[mpeg1 ? 0 : 1][bitrateIndex] * 1000;
+        int padding = (b3 >> 1) & 0x1;
+        return (mpeg1 ? 144 : 72) * bitrate / sampleRate(version, sampleRateIndex) + padding;
+    }
+
+    /**
+     * Gets the duration of the frame at the position in microseconds
+     */
+    private static long frameDuration(ByteBuffer buffer, int position) {
+        int version = ((buffer.get(position + 1) & 0xFF) >> 3) & 0x3;
+        int sampleRateIndex = ((buffer.get(position + 2) & 0xFF) >> 2) & 0x3;
+        int samples = version == 3 ? 1152 : 576;
+        return samples * 1000000L / sampleRate(version, sampleRateIndex);
+    }
+
+    private static int sampleRate(int version, int sampleRateIndex) {
+        switch (version) {
+            case 3:
+                return SAMPLE_RATES[sampleRateIndex];
+            case 2:
+                return SAMPLE_RATES[sampleRateIndex] / 2;
+            default:
+                return SAMPLE_RATES[sampleRateIndex] / 4;
+        }
+    }
+
+    private static boolean isInfoFrame(ByteBuffer buffer, int position, int frameLength) {
+        byte[] start = new byte[Math.min(frameLength, 48)];
+        ByteBuffer frame = buffer.duplicate();
+        frame.position(position);
+        frame.get(start);
+        String header = new String(start, StandardCharsets.ISO_8859_1);
+        return header.contains("Xing") || header.contains("Info");
+    }
+
+    /**
+     * A clip that was cut out of a ringtone
+     */
+    public static class Clip {
+        private final Path path;
+        private final int duration;
+
+        Clip(Path path, int duration) {
+            this.path = path;
+            this.duration = duration;
+        }
+
+        /**
+         * Gets the path of the clip file
+         *
+         * @return the path of the clip file
+         */
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the duration of the clip in milliseconds
+         *
+         * @return the duration of the clip in milliseconds
+         */
+        public int getDuration() {
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The RingtoneManifest keeps track of the ringtones that were already transferred into the addOn's data directory.
+ * For every ringtone it stores the size, the modification time and the SHA-256 hash of the file it was transferred
+ * from, so that on the next start only new or changed ringtones have to be transferred again.
+ * <p>
+ * A ringtone whose size and modification time did not change is skipped without being read. If only the modification
+ * time changed, the content is hashed and the ringtone is only transferred if the hash changed as well. Transfers run
+ * in parallel and use {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the data
+ * does not have to be copied through the heap.
+ * </p>
+ */
+public class RingtoneManifest {
+    private static final String MANIFEST_FILE = "ringtones.manifest";
+
+    private final Context context;
+    private final Path dataDirectory;
+    private final Path manifestPath;
+    private final Map<String, Entry> entries;
+
+    /**
+     * Creates a new RingtoneManifest and reads the manifest from the data directory if there is one
+     *
+     * @param context the context of the addOn
+     * @param dataDirectory the directory the ringtones are transferred to
+     */
+    public RingtoneManifest(Context context, Path dataDirectory) {
+        this.context = context;
+        this.dataDirectory = dataDirectory;
+        this.manifestPath = dataDirectory.resolve(MANIFEST_FILE);
+        this.entries = new ConcurrentHashMap<>();
+        read();
+    }
+
+    /**
+     * Transfers all new or changed ringtones of the source directory into the data directory and saves the manifest
+     * if anything changed
+     *
+     * @param sourceDirectory the directory with the ringtones of the addOn
+     * @return the number of ringtones that were transferred
+     */
+    public int synchronize(Path sourceDirectory) {
+        File[] ringtones = sourceDirectory.toFile().listFiles(File::isFile);
+        if (ringtones == null) {
+            return 0;
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger transferred = new AtomicInteger();
+        AtomicInteger changed = new AtomicInteger();
+        Arrays.stream(ringtones).parallel().forEach(ringtone -> {
+            try {
+                switch (synchronizeRingtone(ringtone.toPath())) {
+                    case TRANSFERRED:
+                        transferred.incrementAndGet();
+                        changed.incrementAndGet();
+                        break;
+                    case TOUCHED:
+                        changed.incrementAndGet();
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IOException e) {
+                context.getLogger().error("Unable to transfer ringtone " + ringtone, e);
+            }
+        });
+
+        if (changed.get() > 0) {
+            write();
+        }
+        context.getLogger().debug("Transferred " + transferred.get() + " of " + ringtones.length + " ringtones in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return transferred.get();
+    }
+
+    private Result synchronizeRingtone(Path ringtone) throws IOException {
+        String name = ringtone.getFileName().toString();
+        Path target = dataDirectory.resolve(name);
+        long size = Files.size(ringtone);
+        long modified = Files.getLastModifiedTime(ringtone).toMillis();
+
+        Entry entry = entries.get(name);
+        boolean targetValid = Files.isRegularFile(target) && Files.size(target) == size;
+        if (entry != null && targetValid && entry.size == size && entry.modified == modified) {
+            return Result.UNCHANGED;
+        }
+
+        String hash = hash(ringtone);
+        if (entry != null && targetValid && entry.size == size && entry.hash.equals(hash)) {
+            // the file was only touched, the content is still the same
+            entries.put(name, new Entry(size, modified, hash));
+            return Result.TOUCHED;
+        }
+
+        transfer(ringtone, target);
+        entries.put(name, new Entry(size, modified, hash));
+        return Result.TRANSFERRED;
+    }
+
+    /**
+     * Copies the ringtone into a temporary file next to the target and moves it into place, so that a half written
+     * ringtone is never played
+     */
+    private void transfer(Path ringtone, Path target) throws IOException {
+        Path tempPath = dataDirectory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel source = FileChannel.open(ringtone, StandardOpenOption.READ);
+             FileChannel destination = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, destination);
+            }
+        }
+        Files.move(tempPath, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+
+        byte[] buffer = new byte[65536];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Reads the manifest, one line per ringtone: name, size, modification time and hash separated by tabs
+     */
+    private void read() {
+        if (!Files.isRegularFile(manifestPath)) {
+            return;
+        }
+
+        try {
+            List<String> lines = Files.readAllLines(manifestPath, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] fields = line.split("\t");
+                if (fields.length != 4) {
+                    continue;
+                }
+                try {
+                    entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+                } catch (NumberFormatException e) {
+                    context.getLogger().warn("Ignoring invalid ringtone manifest entry: " + line);
+                }
+            }
+        } catch (IOException e) {
+            context.getLogger().warn("Unable to read the ringtone manifest, transferring all ringtones", e);
+        }
+    }
+
+    private void write() {
+        Path tempPath = dataDirectory.resolve(MANIFEST_FILE + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(entry.getKey() + "\t" + entry.getValue().size + "\t" + entry.getValue().modified
+                            + "\t" + entry.getValue().hash);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            context.getLogger().warn("Unable to write the ringtone manifest", e);
+        }
+    }
+
+    private enum Result {
+        UNCHANGED, TOUCHED, TRANSFERRED
+    }
+
+    /**
+     * The size, modification time and hash of a ringtone at the time it was transferred
+     */
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final String hash;
+
+        Entry(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
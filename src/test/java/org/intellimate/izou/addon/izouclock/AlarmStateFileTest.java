@@ -0,0 +1,129 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks that the {@link AlarmStateFile} keeps the state of the alarms when it grows, when alarms are removed and
+ * across restarts, and that it stays usable when it can not grow.
+ */
+public class AlarmStateFileTest {
+    private Context context;
+    private Path directory;
+    private Path stateFile;
+
+    @Before
+    public void setUp() throws IOException {
+        context = mock(Context.class, RETURNS_DEEP_STUBS);
+        directory = Files.createTempDirectory("izouclock");
+        stateFile = directory.resolve("alarm.state");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(stateFile);
+        Files.delete(directory);
+    }
+
+    @Test
+    public void keepsTheStateWhileGrowingAndAfterReopening() throws IOException {
+        AlarmStateFile alarmState = new AlarmStateFile(context, stateFile);
+        for (int i = 0; i < 1000; i++) {
+            alarmState.setNextFire("alarm" + i, i, 1000L * i);
+            if (i % 3 == 0) {
+                alarmState.markFired("alarm" + i, i);
+            }
+        }
+        assertEquals(1000, alarmState.size());
+        assertState(alarmState, 0, 1000);
+
+        AlarmStateFile reopened = new AlarmStateFile(context, stateFile);
+        assertEquals(1000, reopened.size());
+        assertState(reopened, 0, 1000);
+    }
+
+    @Test
+    public void ignoresTheStateOfOtherSettings() throws IOException {
+        AlarmStateFile alarmState = new AlarmStateFile(context, stateFile);
+        alarmState.markFired("alarm", 1);
+        alarmState.setNextFire("alarm", 1, 42);
+
+        assertFalse(alarmState.isFired("alarm", 2));
+        assertEquals(-1, alarmState.getNextFire("alarm", 2));
+
+        alarmState.setNextFire("alarm", 2, 43);
+        assertFalse(alarmState.isFired("alarm", 2));
+        assertFalse(alarmState.isFired("alarm", 1));
+        assertEquals(43, alarmState.getNextFire("alarm", 2));
+    }
+
+    @Test
+    public void retainAllRemovesOnlyTheOtherAlarms() throws IOException {
+        AlarmStateFile alarmState = new AlarmStateFile(context, stateFile);
+        List<String> kept = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            alarmState.setNextFire("alarm" + i, i, 1000L * i);
+            if (i % 3 == 0) {
+                alarmState.markFired("alarm" + i, i);
+            }
+            if (i >= 100) {
+                kept.add("alarm" + i);
+            }
+        }
+
+        // removing alarms again and again must not make the file grow without end
+        long size = 0;
+        for (int round = 0; round < 10; round++) {
+            alarmState.retainAll(kept);
+            if (round == 1) {
+                size = Files.size(stateFile);
+            }
+        }
+        assertEquals(size, Files.size(stateFile));
+
+        assertEquals(100, alarmState.size());
+        assertEquals(-1, alarmState.getNextFire("alarm0", 0));
+        assertState(alarmState, 100, 200);
+        assertState(new AlarmStateFile(context, stateFile), 100, 200);
+    }
+
+    @Test(timeout = 10000)
+    public void refusesNewAlarmsWhenItCanNotGrow() throws IOException {
+        AlarmStateFile alarmState = new AlarmStateFile(context, stateFile);
+        alarmState.markFired("alarm0", 0);
+        // the mapping stays valid, but the file can not be opened to grow any more (not possible on every platform)
+        try {
+            Files.delete(stateFile);
+        } catch (IOException e) {
+            assumeTrue("the mapped state file can not be deleted", false);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            alarmState.setNextFire("alarm" + i, i, 1000L * i);
+        }
+
+        assertTrue(alarmState.size() < 64);
+        assertTrue(alarmState.isFired("alarm0", 0));
+        assertEquals(-1, alarmState.getNextFire("alarm199", 199));
+        assertFalse(alarmState.isFired("alarm199", 199));
+    }
+
+    private static void assertState(AlarmStateFile alarmState, int from, int to) {
+        for (int i = from; i < to; i++) {
+            assertEquals("alarm" + i, 1000L * i, alarmState.getNextFire("alarm" + i, i));
+            assertEquals("alarm" + i, i % 3 == 0, alarmState.isFired("alarm" + i, i));
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.sdk.Context;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks how a {@link DeadlineTask} treats the early and the late tolerance around its deadline, and how far from
+ * their deadlines a batch of tasks goes off on a {@link LoggedScheduledExecutor}.
+ */
+public class DeadlineTaskTest {
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Context context;
+    private LatencyHistogram jitter;
+    private AtomicLong missedDeadlines;
+    private AtomicLong firedAt;
+
+    @Before
+    public void setUp() {
+        context = mock(Context.class, RETURNS_DEEP_STUBS);
+        jitter = new LatencyHistogram();
+        missedDeadlines = new AtomicLong();
+        firedAt = new AtomicLong(-1);
+    }
+
+    @Test
+    public void goesOffRightAwayWithinTheEarlyTolerance() {
+        long deadline = System.nanoTime() + 200 * MILLISECOND;
+
+        task(deadline, 0, 500 * MILLISECOND, 10 * MILLISECOND).run();
+
+        assertFired();
+        assertTrue("the task waited for the deadline", firedAt.get() < deadline);
+        assertEquals(1, jitter.snapshot().getCount());
+    }
+
+    @Test
+    public void waitsForTheDeadlineBeyondTheEarlyTolerance() {
+        long deadline = System.nanoTime() + 20 * MILLISECOND;
+
+        task(deadline, 0, MILLISECOND, 10 * MILLISECOND).run();
+
+        assertFired();
+        assertTrue("the task went off before the deadline", firedAt.get() >= deadline);
+        assertEquals(1, jitter.snapshot().getCount());
+        assertEquals(0, missedDeadlines.get());
+    }
+
+    @Test
+    public void goesOffLateWithinTheLateTolerance() {
+        long deadline = System.nanoTime() - MILLISECOND;
+
+        task(deadline, 0, MILLISECOND, TimeUnit.SECONDS.toNanos(10)).run();
+
+        assertFired();
+        assertEquals(1, jitter.snapshot().getCount());
+        assertTrue(jitter.snapshot().getMax() >= MILLISECOND);
+        assertEquals(0, missedDeadlines.get());
+    }
+
+    @Test
+    public void doesNotGoOffBeyondTheLateTolerance() {
+        long deadline = System.nanoTime() - 50 * MILLISECOND;
+
+        task(deadline, 0, MILLISECOND, 10 * MILLISECOND).run();
+
+        assertEquals("the alarm went off", -1, firedAt.get());
+        assertEquals(1, missedDeadlines.get());
+        assertEquals(0, jitter.snapshot().getCount());
+        verify(context.getLogger()).warn(anyString());
+    }
+
+    @Test
+    public void repeatingTaskMovesItsDeadlineByThePeriod() {
+        long deadline = System.nanoTime() - MILLISECOND;
+        long period = TimeUnit.SECONDS.toNanos(60);
+        DeadlineTask task = task(deadline, period, MILLISECOND, TimeUnit.SECONDS.toNanos(10));
+
+        task.run();
+        assertEquals(deadline + period, task.getDeadline());
+
+        // a run that missed its deadline still moves the deadline on
+        DeadlineTask missed = task(deadline - TimeUnit.SECONDS.toNanos(20), period, MILLISECOND,
+                TimeUnit.SECONDS.toNanos(10));
+        missed.run();
+        assertEquals(deadline - TimeUnit.SECONDS.toNanos(20) + period, missed.getDeadline());
+        assertEquals(1, missedDeadlines.get());
+    }
+
+    @Test
+    public void batchGoesOffCloseToItsDeadlines() throws InterruptedException {
+        int tasks = 200;
+        // queued this much earlier than the deadline, like the ClockActivator does
+        long lead = 2 * MILLISECOND;
+        LoggedScheduledExecutor executor = new LoggedScheduledExecutor(context, 4);
+        executor.prestartAllCoreThreads();
+        CountDownLatch done = new CountDownLatch(tasks);
+        try {
+            // a deadline every millisecond, every task keeps a thread busy for up to the lead
+            long start = System.nanoTime();
+            for (int i = 0; i < tasks; i++) {
+                long deadline = start + (50 + i) * MILLISECOND;
+                DeadlineTask task = new DeadlineTask(context, "alarm" + i, done::countDown, deadline, 0, 0,
+                        TimeUnit.SECONDS.toNanos(1), jitter, missedDeadlines);
+                // the delay counts from now, not from the start, or the time it takes to schedule is added to it
+                executor.schedule(task, deadline - lead - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            assertTrue("the tasks did not go off", done.await(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LatencyHistogram.Snapshot snapshot = jitter.snapshot();
+        System.out.println("Jitter of " + tasks + " deadline tasks: p50 "
+                + snapshot.getValueAtPercentile(50) / 1000 + " us, p99 " + snapshot.getValueAtPercentile(99) / 1000
+                + " us, max " + snapshot.getMax() / 1000 + " us");
+        assertEquals(tasks, snapshot.getCount());
+        assertEquals(0, missedDeadlines.get());
+        // loose, so a busy build machine does not fail the test
+        assertTrue("p99 jitter of " + snapshot.getValueAtPercentile(99) + " ns",
+                snapshot.getValueAtPercentile(99) < 10 * MILLISECOND);
+    }
+
+    private DeadlineTask task(long deadline, long period, long earlyTolerance, long lateTolerance) {
+        return new DeadlineTask(context, "alarm", () -> firedAt.compareAndSet(-1, System.nanoTime()), deadline,
+                period, earlyTolerance, lateTolerance, jitter, missedDeadlines);
+    }
+
+    private void assertFired() {
+        assertNotEquals("the alarm did not go off", -1, firedAt.get());
+    }
+}
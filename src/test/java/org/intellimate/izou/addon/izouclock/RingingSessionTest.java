@@ -0,0 +1,99 @@
+package org.intellimate.izou.addon.izouclock;
+
+import org.intellimate.izou.events.EventModel;
+import org.intellimate.izou.sdk.Context;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks that ringing sessions run on their own scheduler, the way the {@link ClockContentGenerator} creates them, and
+ * never take a thread from the shared Izou thread pool.
+ */
+public class RingingSessionTest {
+    private static final int SESSIONS = 2000;
+    private static final int RINGS = 3;
+
+    private Context context;
+    private LoggedScheduledExecutor ringingScheduler;
+
+    @Before
+    public void setUp() {
+        context = mock(Context.class, RETURNS_DEEP_STUBS);
+        ringingScheduler = new LoggedScheduledExecutor(context, 1);
+    }
+
+    @After
+    public void tearDown() {
+        ringingScheduler.shutdownNow();
+    }
+
+    @Test
+    public void manySessionsRingWithoutTheSharedThreadPool() throws InterruptedException {
+        CountDownLatch allRung = new CountDownLatch(SESSIONS * RINGS);
+        Set<Thread> ringThreads = ConcurrentHashMap.newKeySet();
+        Runnable ring = () -> {
+            ringThreads.add(Thread.currentThread());
+            context.getEvents().distributor().fireEventConcurrently(mock(EventModel.class));
+            allRung.countDown();
+        };
+
+        for (int i = 0; i < SESSIONS; i++) {
+            new RingingSession(ringingScheduler, ring, 10, RINGS).start();
+        }
+
+        assertTrue("not all sessions rang " + RINGS + " times", allRung.await(30, TimeUnit.SECONDS));
+        assertEquals(1, ringThreads.size());
+        assertEquals(1, ringingScheduler.getPoolSize());
+        verify(context, never()).getThreadPool();
+    }
+
+    @Test
+    public void stoppedSessionsDoNotRingAgain() throws InterruptedException, ExecutionException {
+        List<RingingSession> sessions = new ArrayList<>();
+        AtomicInteger rings = new AtomicInteger();
+        CountDownLatch firstRings = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            RingingSession session = new RingingSession(ringingScheduler, () -> {
+                rings.incrementAndGet();
+                firstRings.countDown();
+            }, TimeUnit.MINUTES.toMillis(1), RINGS);
+            sessions.add(session);
+            session.start();
+        }
+        assertTrue(firstRings.await(10, TimeUnit.SECONDS));
+
+        sessions.forEach(RingingSession::stop);
+        // a ring that ran while the sessions were stopped has to finish first, the scheduler has only one thread
+        ringingScheduler.submit(() -> { }).get();
+
+        assertTrue(sessions.stream().allMatch(RingingSession::isStopped));
+        assertTrue(ringingScheduler.getQueue().stream().allMatch(ring -> ((Future<?>) ring).isCancelled()));
+        assertEquals(100, rings.get());
+        verify(context, never()).getThreadPool();
+    }
+
+    @Test
+    public void sessionRingsAtMostMaxRings() throws InterruptedException {
+        AtomicInteger rings = new AtomicInteger();
+        new RingingSession(ringingScheduler, rings::incrementAndGet, 1, RINGS).start();
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertEquals(RINGS, rings.get());
+        assertEquals(0, ringingScheduler.getQueue().size());
+    }
+}
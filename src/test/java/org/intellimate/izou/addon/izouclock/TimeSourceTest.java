@@ -0,0 +1,156 @@
+package org.intellimate.izou.addon.izouclock;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks the arithmetic of the {@link TimeSource} against {@link ZonedDateTime}, especially across daylight saving time
+ * changes, where the cached UTC offset has to be replaced, and that asking for the time creates no garbage in between.
+ */
+public class TimeSourceTest {
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+    private static final ZoneId SYDNEY = ZoneId.of("Australia/Sydney");
+
+    @Test
+    public void matchesZonedDateTimeAcrossSpringForward() {
+        // 2024-03-31 02:00 in Berlin is 03:00 after the change
+        sweep(BERLIN, Instant.parse("2024-03-31T01:00:00Z"));
+    }
+
+    @Test
+    public void matchesZonedDateTimeAcrossFallBack() {
+        // 2024-10-27 03:00 in Berlin is 02:00 after the change
+        sweep(BERLIN, Instant.parse("2024-10-27T01:00:00Z"));
+    }
+
+    @Test
+    public void matchesZonedDateTimeAcrossSouthernHemisphereChange() {
+        // 2024-04-07 03:00 in Sydney is 02:00 after the change, on a sunday
+        sweep(SYDNEY, Instant.parse("2024-04-06T16:00:00Z"));
+    }
+
+    @Test
+    public void matchesZonedDateTimeWhenTheClockGoesBack() {
+        MutableClock clock = new MutableClock(BERLIN, Instant.parse("2024-03-31T03:00:00Z"));
+        TimeSource timeSource = new TimeSource(clock);
+        assertTime(timeSource, clock);
+
+        clock.instant = Instant.parse("2024-03-30T23:59:59Z");
+        assertTime(timeSource, clock);
+    }
+
+    @Test
+    public void secondsUntilWrapsAroundTheWeek() {
+        // a saturday, 23:59:59 local time
+        Instant instant = ZonedDateTime.of(2024, 4, 6, 23, 59, 59, 0, BERLIN).toInstant();
+        TimeSource timeSource = new TimeSource(Clock.fixed(instant, BERLIN));
+
+        assertEquals(TimeSource.secondOfWeek(7, 23, 59, 59), timeSource.secondOfWeek());
+        assertEquals(0, timeSource.secondsUntil(TimeSource.secondOfWeek(7, 23, 59, 59)));
+        assertEquals(1, timeSource.secondsUntil(TimeSource.secondOfWeek(1, 0, 0, 0)));
+        assertEquals(instant.getEpochSecond() + 1, timeSource.nextFireEpochSecond(TimeSource.secondOfWeek(1, 0, 0, 0)));
+    }
+
+    @Test
+    public void allocatesNothingWithoutATransition() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // a wednesday in june, months away from a daylight saving time change in Berlin
+        TimeSource timeSource = new TimeSource(Clock.fixed(Instant.parse("2024-06-05T10:00:00Z"), BERLIN));
+        int alarm = TimeSource.secondOfWeek(2, 7, 30, 0);
+        long warmUp = askForTheTime(timeSource, alarm, 200000);
+
+        // asking for the allocated bytes may allocate itself, that is measured first and subtracted
+        long start = threads.getThreadAllocatedBytes(threadId);
+        long measurement = threads.getThreadAllocatedBytes(threadId) - start;
+        start = threads.getThreadAllocatedBytes(threadId);
+        long result = askForTheTime(timeSource, alarm, 200000);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - start - measurement;
+
+        assertEquals(warmUp, result);
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Calls every method that is used to schedule an alarm the given number of times
+     */
+    private static long askForTheTime(TimeSource timeSource, int alarm, int times) {
+        long sum = 0;
+        for (int i = 0; i < times; i++) {
+            sum += timeSource.secondOfWeek();
+            sum += timeSource.localEpochMilli();
+            sum += timeSource.secondsUntil(alarm);
+            sum += timeSource.nextFireEpochSecond(alarm);
+        }
+        return sum;
+    }
+
+    /**
+     * Moves a single TimeSource in steps of 7 minutes and 1 second from 3 hours before to 3 hours after the given
+     * transition and compares every step with {@link ZonedDateTime}
+     */
+    private static void sweep(ZoneId zone, Instant transition) {
+        MutableClock clock = new MutableClock(zone, transition.minusSeconds(3 * 60 * 60));
+        TimeSource timeSource = new TimeSource(clock);
+        while (clock.instant.isBefore(transition.plusSeconds(3 * 60 * 60))) {
+            assertTime(timeSource, clock);
+            clock.instant = clock.instant.plusMillis(7 * 60 * 1000 + 1001);
+        }
+    }
+
+    private static void assertTime(TimeSource timeSource, MutableClock clock) {
+        ZonedDateTime expected = ZonedDateTime.ofInstant(clock.instant, clock.zone);
+        String at = expected.toString();
+        int offset = expected.getOffset().getTotalSeconds();
+        int secondOfDay = expected.toLocalTime().toSecondOfDay();
+        int secondOfWeek = (expected.getDayOfWeek().getValue() % 7) * 24 * 60 * 60 + secondOfDay;
+
+        assertEquals(at, clock.instant.getEpochSecond(), timeSource.epochSecond());
+        assertEquals(at, offset, timeSource.offsetSeconds());
+        assertEquals(at, clock.instant.getEpochSecond() + offset, timeSource.localEpochSecond());
+        assertEquals(at, clock.instant.toEpochMilli() + offset * 1000L, timeSource.localEpochMilli());
+        assertEquals(at, secondOfDay, timeSource.secondOfDay());
+        assertEquals(at, secondOfWeek, timeSource.secondOfWeek());
+        assertEquals(at, secondOfWeek * 1000L + expected.getNano() / 1000000, timeSource.millisOfWeek());
+    }
+
+    /**
+     * A clock whose instant can be moved by the test
+     */
+    private static class MutableClock extends Clock {
+        private final ZoneId zone;
+        private volatile Instant instant;
+
+        MutableClock(ZoneId zone, Instant instant) {
+            this.zone = zone;
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new MutableClock(zone, instant);
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks that the {@link AlarmActivator} keeps the plain weekly alarms in an {@link AlarmTable} above the threshold,
+ * and finds the same active alarms either way.
+ */
+public class AlarmActivatorTest {
+    private static final String[] DAYS = {"sunday", "monday", "tuesday", "wednesday", "thursday", "friday",
+            "saturday"};
+
+    private Context context;
+    private Properties properties;
+    private Map<String, String> alarms;
+
+    @Before
+    public void setUp() {
+        context = mock(Context.class, RETURNS_DEEP_STUBS);
+        properties = new Properties();
+        properties.setProperty("alarmActivityState", "true");
+        when(context.getPropertiesAssistant().getProperty(anyString()))
+                .thenAnswer(invocation -> properties.getProperty(invocation.getArgument(0)));
+        when(context.getPropertiesAssistant().getEventPropertiesAssistant().getEventID(anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        alarms = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            alarms.put("alarmSettings" + i, DAYS[i % 7] + ";" + (i % 2 == 0) + ";" + (i / 7 % 24) + ";"
+                    + (i / 168 % 60) + ";" + (i % 13) + ";event" + (i % 5));
+        }
+        alarms.put("alarmSettingsRule", "weekdays;true;0;0;3;event1");
+        alarms.put("alarmSettingsPrecise", "monday;true;0;0;4.250;event2");
+        alarms.put("alarmSettingsCatchUp", "monday;true;0;0;5;event3;catchup:late");
+    }
+
+    @Test
+    public void keepsPlainAlarmsInTheTableAboveTheThreshold() {
+        properties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY, "1000");
+        AlarmActivator alarmActivator = new AlarmActivator(context, alarms, false);
+
+        assertEquals(2000, alarmActivator.getAlarmTable().size());
+        assertEquals(new HashSet<>(Arrays.asList("alarmSettingsRule", "alarmSettingsPrecise", "alarmSettingsCatchUp")),
+                alarmActivator.getSettingsMap().keySet());
+        assertEquals(alarms.size(), alarmActivator.size());
+    }
+
+    @Test
+    public void keepsAllAlarmsInTheSettingsMapUpToTheThreshold() {
+        properties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY, String.valueOf(alarms.size()));
+        AlarmActivator alarmActivator = new AlarmActivator(context, alarms, false);
+
+        assertTrue(alarmActivator.getAlarmTable().isEmpty());
+        assertEquals(alarms.size(), alarmActivator.getSettingsMap().size());
+    }
+
+    @Test
+    public void findsTheSameAlarmsWithTheTable() {
+        properties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY, String.valueOf(Integer.MAX_VALUE));
+        AlarmActivator withoutTable = new AlarmActivator(context, alarms, false);
+        properties.setProperty(AlarmActivator.TABLE_THRESHOLD_PROPERTY, "0");
+        AlarmActivator withTable = new AlarmActivator(context, alarms, false);
+        assertEquals(3, withTable.getSettingsMap().size());
+
+        ActiveAlarms expected = new ActiveAlarms();
+        ActiveAlarms actual = new ActiveAlarms();
+        int checked = 0;
+        for (int day = 1; day <= 7; day++) {
+            for (int hours = 0; hours < 24; hours += 5) {
+                for (int seconds = 0; seconds < 60; seconds += 3) {
+                    withoutTable.checkActivity(day, hours, 0, seconds, expected);
+                    withTable.checkActivity(day, hours, 0, seconds, actual);
+                    assertEquals(activeAlarms(expected), activeAlarms(actual));
+                    checked += expected.size();
+                }
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    /**
+     * Gets the active alarms by name, with their repeat state and events
+     */
+    private static Map<String, String> activeAlarms(ActiveAlarms activeAlarms) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < activeAlarms.size(); i++) {
+            result.put(activeAlarms.getName(i), activeAlarms.isRepeat(i) + " " + activeAlarms.getEvents(i));
+        }
+        return result;
+    }
+}
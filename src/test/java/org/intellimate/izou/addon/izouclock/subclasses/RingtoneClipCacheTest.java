@@ -0,0 +1,76 @@
+package org.intellimate.izou.addon.izouclock.subclasses;
+
+import org.intellimate.izou.sdk.Context;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Checks that the {@link RingtoneClipCache} cuts a clip only once, and uses it again after a restart.
+ */
+public class RingtoneClipCacheTest {
+    private Context context;
+    private Path dataDirectory;
+    private Path ringtone;
+
+    @Before
+    public void setUp() throws IOException, URISyntaxException {
+        context = mock(Context.class, RETURNS_DEEP_STUBS);
+        dataDirectory = Files.createTempDirectory("izouclock");
+        ringtone = dataDirectory.resolve("Welcome.mp3");
+        Files.copy(Paths.get(getClass().getResource("/ringtones/Welcome.mp3").toURI()), ringtone);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        File[] clips = dataDirectory.resolve("clips").toFile().listFiles();
+        if (clips != null) {
+            for (File clip : clips) {
+                Files.delete(clip.toPath());
+            }
+        }
+        Files.deleteIfExists(dataDirectory.resolve("clips"));
+        Files.delete(ringtone);
+        Files.delete(dataDirectory);
+    }
+
+    @Test
+    public void usesTheClipAgainAfterARestart() throws IOException {
+        RingtoneClipCache.Clip clip = new RingtoneClipCache(context, dataDirectory).getClip(ringtone, 10000, 5000)
+                .orElseThrow(AssertionError::new);
+        assertTrue(clip.getDuration() > 4900 && clip.getDuration() <= 5000);
+        FileTime cutAt = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(clip.getPath(), cutAt);
+
+        RingtoneClipCache.Clip loaded = new RingtoneClipCache(context, dataDirectory).getClip(ringtone, 10000, 5000)
+                .orElseThrow(AssertionError::new);
+
+        assertEquals(clip.getPath(), loaded.getPath());
+        assertEquals(clip.getDuration(), loaded.getDuration());
+        assertEquals("the clip was cut again", cutAt, Files.getLastModifiedTime(loaded.getPath()));
+    }
+
+    @Test
+    public void cutsANewClipWhenTheSettingsChange() throws IOException {
+        RingtoneClipCache clipCache = new RingtoneClipCache(context, dataDirectory);
+        Path first = clipCache.getClip(ringtone, 10000, 5000).orElseThrow(AssertionError::new).getPath();
+
+        RingtoneClipCache.Clip second = new RingtoneClipCache(context, dataDirectory).getClip(ringtone, 0, 3000)
+                .orElseThrow(AssertionError::new);
+
+        assertNotEquals(first, second.getPath());
+        assertFalse("the outdated clip was not removed", Files.exists(first));
+        assertTrue(second.getDuration() > 2900 && second.getDuration() <= 3000);
+    }
+}